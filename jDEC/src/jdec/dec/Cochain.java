@@ -44,9 +44,25 @@ public class Cochain {
 	}
 
 	public double get(Simplex key) {
-		int index = space.simplexToIndex(key);
+		double value = get(key.vertices(), 0);
+		return key.parity() == 0 ? value : -value;
+	}
+
+	/**
+	 * Value on the simplex with the given vertices, taking into account the
+	 * orientation of the tuple with respect to the simplex stored in the
+	 * complex. No allocation is performed.
+	 * 
+	 * @param vertices
+	 * @param offset
+	 *            the position of the first vertex in the array
+	 * @return
+	 */
+	public double get(int[] vertices, int offset) {
+		Subspace s = indexSpace();
+		int index = indexOf(s, vertices, offset);
 		double value = v[index];
-		return space.simplex(index).compareParity(key) ? value : -value;
+		return s.relativeParity(index, vertices, offset) == 0 ? value : -value;
 	}
 
 	public double get(int key) {
@@ -54,13 +70,119 @@ public class Cochain {
 	}
 
 	public void set(Simplex key, double value) {
-		int index = space.simplexToIndex(key);
-		if (space.simplex(index).compareParity(key))
+		set(key.vertices(), 0, key.parity() == 0 ? value : -value);
+	}
+
+	/**
+	 * Set the value on the simplex with the given vertices, taking into
+	 * account the orientation of the tuple with respect to the simplex stored
+	 * in the complex. No allocation is performed.
+	 * 
+	 * @param vertices
+	 * @param offset
+	 *            the position of the first vertex in the array
+	 * @param value
+	 */
+	public void set(int[] vertices, int offset, double value) {
+		Subspace s = indexSpace();
+		int index = indexOf(s, vertices, offset);
+		if (s.relativeParity(index, vertices, offset) == 0)
 			v[index] = value;
 		else
 			v[index] = -value;
 	}
 
+	/**
+	 * Add a value to the simplex with the given vertices, taking into account
+	 * the orientation of the tuple with respect to the simplex stored in the
+	 * complex. No allocation is performed.
+	 * 
+	 * @param vertices
+	 * @param offset
+	 *            the position of the first vertex in the array
+	 * @param value
+	 */
+	public void add(int[] vertices, int offset, double value) {
+		Subspace s = indexSpace();
+		int index = indexOf(s, vertices, offset);
+		if (s.relativeParity(index, vertices, offset) == 0)
+			v[index] += value;
+		else
+			v[index] -= value;
+	}
+
+	public void add(int key, double value) {
+		v[key] += value;
+	}
+
+	/**
+	 * @return the complex of this cochain
+	 */
+	SimplicialComplex complex() {
+		return complex;
+	}
+
+	/**
+	 * @return the backing array of values, indexed by the simplices of
+	 *         indexDimension()
+	 */
+	double[] values() {
+		return v;
+	}
+
+	/**
+	 * @return the dimension of the simplices which index the values of this
+	 *         cochain
+	 */
+	int indexDimension() {
+		return isPrimal ? k : n - k;
+	}
+
+	/**
+	 * @param complex
+	 * @return the dimension of the simplices which would index the values of
+	 *         a cochain of the same dimension and kind in another complex
+	 */
+	int indexDimension(SimplicialComplex complex) {
+		return isPrimal ? k : complex.complexDimension() - k;
+	}
+
+	/**
+	 * @param target
+	 *            the complex of the new cochain
+	 * @param newToOld
+	 *            for each simplex of the index dimension of the target, the
+	 *            index of the value to copy, or -1 for zero
+	 * @param relativeParity
+	 *            1 where the sign of the value must be changed, or null
+	 * @return a new cochain of the same dimension whose values are taken from
+	 *         this one
+	 */
+	Cochain remap(SimplicialComplex target, int[] newToOld,
+			int[] relativeParity) {
+		Cochain f = new Cochain(target, k, isPrimal);
+		for (int i = 0; i < f.v.length; i++)
+			if (newToOld[i] >= 0)
+				f.v[i] = relativeParity != null && relativeParity[i] != 0 ? -v[newToOld[i]]
+						: v[newToOld[i]];
+		return f;
+	}
+
+	/**
+	 * @return the subspace whose simplices index the values of this cochain
+	 */
+	private Subspace indexSpace() {
+		return isPrimal ? space : dualSpace;
+	}
+
+	private static int indexOf(Subspace s, int[] vertices, int offset) {
+		int index = s.indexOf(vertices, offset);
+		if (index < 0)
+			throw new IllegalArgumentException(
+					"The vertices do not define a simplex of the complex");
+		return index;
+	}
+
 	public void set(int key, double value) {
 		v[key] = value;
 	}
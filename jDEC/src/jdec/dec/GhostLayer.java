@@ -0,0 +1,262 @@
+package jdec.dec;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+import jdec.dec.SimplicialComplex.Remap;
+import jdec.mesh.Incidence;
+import jdec.mesh.SimplexTable;
+import jdec.util.Parallel;
+
+/**
+ * The local complexes of the parts of a {@link Partition}: each one is made
+ * of the n-simplices owned by the part, plus a ghost layer of all the
+ * n-simplices sharing a vertex with them, and of their faces. The complete
+ * star of every simplex in the closure of the owned n-simplices is thus
+ * local, so that d, the Hodge stars and the Laplacians can be applied to the
+ * owned simplices in each part independently.
+ *
+ * The local complexes are extracted from the tables of the partitioned
+ * complex, with the orientation of their simplices, and come with
+ * local-to-global index maps. The values of local cochains on the ghost
+ * simplices (those owned by other parts) are exchanged in place with
+ * {@link #exchange(Cochain[])}.
+ *
+ */
+public class GhostLayer {
+
+	private final Partition partition;
+	private final Remap[] local;
+	// for each part and dimension, the local index of each ghost simplex,
+	// and the part owning it and its index in the local complex of that part
+	private final int[][][] ghosts;
+	private final int[][][] sourcePart;
+	private final int[][][] sourceIndex;
+
+	/**
+	 * Build the local complexes of the parts of a partition
+	 *
+	 * @param partition
+	 */
+	public GhostLayer(Partition partition) {
+		this.partition = partition;
+		SimplicialComplex complex = partition.complex();
+		int n = complex.complexDimension();
+		int parts = partition.parts();
+		local = new Remap[parts];
+		ghosts = new int[parts][n + 1][];
+		sourcePart = new int[parts][n + 1][];
+		sourceIndex = new int[parts][n + 1][];
+
+		// the extraction reads tables and geometry which update() and
+		// resetGeometry() replace under the monitor of the complex
+		synchronized (complex) {
+			// index of each point in the table of 0-simplices
+			SimplexTable vertexTable = complex.getSubspace(0).simplices();
+			int[] vertexIndex = new int[complex.getVertices().length];
+			for (int v = 0; v < vertexTable.size(); v++)
+				vertexIndex[vertexTable.get(v, 0)] = v;
+			Incidence star = complex.vertexStar(n);
+			SimplexTable top = complex.getSubspace(n).simplices();
+			int[] topNewToOld = partition.newToOld(n);
+			int[] offsets = partition.offsets(n);
+			int[] mark = new int[top.size()];
+			Arrays.fill(mark, -1);
+			int[][] index = complex.newIndex(n);
+			for (int k = 0; k < parts; k++) {
+				// the owned n-simplices and those sharing a vertex with them
+				int count = 0;
+				int[] selected = new int[offsets[k + 1] - offsets[k]];
+				for (int i = offsets[k]; i < offsets[k + 1]; i++) {
+					int s = topNewToOld[i];
+					for (int c = 0; c <= n; c++) {
+						int v = vertexIndex[top.get(s, c)];
+						for (int j = star.start(v); j < star.end(v); j++) {
+							int t = star.targets()[j];
+							if (mark[t] == k)
+								continue;
+							mark[t] = k;
+							if (count == selected.length)
+								selected = Arrays.copyOf(selected, 2 * count);
+							selected[count++] = t;
+						}
+					}
+				}
+				selected = Arrays.copyOf(selected, count);
+				Arrays.sort(selected);
+				local[k] = complex.extract(n, selected, null, index);
+			}
+		}
+
+		for (int k = 0; k < parts; k++)
+			for (int p = 0; p <= n; p++) {
+				int[] owner = partition.owner(p);
+				int[] localToGlobal = local[k].newToOld(p);
+				int count = 0;
+				for (int s : localToGlobal)
+					if (owner[s] != k)
+						count++;
+				int[] g = new int[count];
+				int[] part = new int[count];
+				int[] source = new int[count];
+				for (int i = 0, q = 0; i < localToGlobal.length; i++) {
+					int s = localToGlobal[i];
+					if (owner[s] == k)
+						continue;
+					g[q] = i;
+					part[q] = owner[s];
+					// the owner has the simplex in the closure of its own
+					// n-simplices
+					source[q++] = Arrays.binarySearch(
+							local[owner[s]].newToOld(p), s);
+				}
+				ghosts[k][p] = g;
+				sourcePart[k][p] = part;
+				sourceIndex[k][p] = source;
+			}
+	}
+
+	/**
+	 * @return the partition
+	 */
+	public Partition partition() {
+		return partition;
+	}
+
+	/**
+	 * @param part
+	 * @return the local complex of a part
+	 */
+	public SimplicialComplex complex(int part) {
+		return local[part].complex();
+	}
+
+	/**
+	 * @param part
+	 * @return the index maps between the partitioned complex and the local
+	 *         complex of a part
+	 */
+	public Remap remap(int part) {
+		return local[part];
+	}
+
+	/**
+	 * @param part
+	 * @param p
+	 * @return the global index of each local p-simplex of a part
+	 */
+	public int[] localToGlobal(int part, int p) {
+		return local[part].newToOld(p);
+	}
+
+	/**
+	 * @param part
+	 * @param p
+	 * @return the local indices of the p-simplices of a part which are owned
+	 *         by other parts, in increasing order
+	 */
+	public int[] ghosts(int part, int p) {
+		return ghosts[part][p];
+	}
+
+	/**
+	 * Copy the values of a cochain of the partitioned complex into cochains of
+	 * the same dimension and kind of the local complexes
+	 *
+	 * @param global
+	 * @param locals
+	 *            one cochain per part, overwritten
+	 */
+	public void scatter(Cochain global, final Cochain[] locals) {
+		final int p = global.indexDimension();
+		final double[] values = global.values();
+		checkGlobal(global);
+		checkLocals(locals, p);
+		Parallel.forRange(executor(), locals.length, locals.length,
+				new Parallel.Range() {
+					public void run(int chunk, int from, int to) {
+						for (int k = from; k < to; k++) {
+							double[] v = locals[k].values();
+							int[] localToGlobal = local[k].newToOld(p);
+							for (int i = 0; i < v.length; i++)
+								v[i] = values[localToGlobal[i]];
+						}
+					}
+				});
+	}
+
+	/**
+	 * Copy the values of local cochains on the simplices owned by each part
+	 * into a cochain of the partitioned complex
+	 *
+	 * @param locals
+	 *            one cochain per part
+	 * @param global
+	 *            overwritten
+	 */
+	public void gather(final Cochain[] locals, Cochain global) {
+		final int p = global.indexDimension();
+		final double[] values = global.values();
+		final int[] owner = partition.owner(p);
+		checkGlobal(global);
+		checkLocals(locals, p);
+		Parallel.forRange(executor(), locals.length, locals.length,
+				new Parallel.Range() {
+					public void run(int chunk, int from, int to) {
+						for (int k = from; k < to; k++) {
+							double[] v = locals[k].values();
+							int[] localToGlobal = local[k].newToOld(p);
+							for (int i = 0; i < v.length; i++)
+								if (owner[localToGlobal[i]] == k)
+									values[localToGlobal[i]] = v[i];
+						}
+					}
+				});
+	}
+
+	/**
+	 * Update the values of local cochains on the ghost simplices of each part
+	 * with those of the parts owning them. Only ghost values are written, and
+	 * only owned values are read, so the parts are updated concurrently.
+	 *
+	 * @param locals
+	 *            one cochain per part
+	 */
+	public void exchange(final Cochain[] locals) {
+		final int p = locals.length == 0 ? 0 : locals[0].indexDimension();
+		checkLocals(locals, p);
+		Parallel.forRange(executor(), locals.length, locals.length,
+				new Parallel.Range() {
+					public void run(int chunk, int from, int to) {
+						for (int k = from; k < to; k++) {
+							double[] v = locals[k].values();
+							int[] g = ghosts[k][p];
+							int[] part = sourcePart[k][p];
+							int[] source = sourceIndex[k][p];
+							for (int i = 0; i < g.length; i++)
+								v[g[i]] = locals[part[i]].values()[source[i]];
+						}
+					}
+				});
+	}
+
+	private void checkGlobal(Cochain global) {
+		if (global.complex() != partition.complex())
+			throw new IllegalArgumentException(
+					"The cochain must be defined on the partitioned complex");
+	}
+
+	private void checkLocals(Cochain[] locals, int p) {
+		if (locals.length != local.length)
+			throw new IllegalArgumentException("One cochain per part expected");
+		for (int k = 0; k < locals.length; k++)
+			if (locals[k].complex() != local[k].complex()
+					|| locals[k].indexDimension() != p)
+				throw new IllegalArgumentException(
+						"The cochains must be defined on the local complexes, with the same dimension");
+	}
+
+	private ExecutorService executor() {
+		return partition.complex().executor();
+	}
+}
@@ -0,0 +1,388 @@
+package jdec.dec;
+
+import java.util.concurrent.ExecutorService;
+
+import jdec.linalg.CSRMatrix;
+import jdec.linalg.CompressedRows;
+import jdec.mesh.Incidence;
+import jdec.mesh.SimplexTable;
+import jdec.util.Parallel;
+
+/**
+ * A partition of a complex in balanced subdomains, for solves split among
+ * threads. The n-simplices are split by recursive coordinate bisection of
+ * their centroids: each set of simplices is cut in two along the axis of
+ * largest extent, at the position that splits the number of parts (and
+ * simplices) in halves. Each lower-dimensional simplex is owned by the
+ * smallest part among those of its cofaces; it is an interface simplex if it
+ * belongs to the closure of the simplices of more than one part.
+ *
+ * The simplices of each dimension are renumbered so that each part owns a
+ * contiguous range of indices, the simplices of a part keeping their
+ * relative order. The operators of the complex can be renumbered
+ * accordingly, and values attached to the simplices permuted with
+ * {@link jdec.mesh.Renumbering#permute(double[], int[])} and the maps of this
+ * partition.
+ *
+ */
+public class Partition {
+
+	private final SimplicialComplex complex;
+	private final int parts;
+	private final int[][] owner;
+	private final int[][] interfaces;
+	private final int[][] offsets;
+	private final int[][] newToOld;
+	private final int[][] oldToNew;
+
+	/**
+	 * Partition a complex in the given number of parts; all its dimensions
+	 * are built
+	 *
+	 * @param complex
+	 * @param parts
+	 */
+	public Partition(SimplicialComplex complex, int parts) {
+		if (parts < 1)
+			throw new IllegalArgumentException("Invalid number of parts "
+					+ parts);
+		this.complex = complex;
+		this.parts = parts;
+		int n = complex.complexDimension();
+		complex.buildSkeleton(0);
+		owner = new int[n + 1][];
+		interfaces = new int[n + 1][];
+		offsets = new int[n + 1][];
+		newToOld = new int[n + 1][];
+		oldToNew = new int[n + 1][];
+
+		double[][] points = complex.getVertices();
+		owner[n] = bisect(centroids(complex.getSubspace(n).simplices(),
+				points), points[0].length, parts);
+		interfaces[n] = new int[0];
+		boolean[] shared = new boolean[owner[n].length];
+		ExecutorService executor = complex.executor();
+		for (int p = n - 1; p >= 0; p--) {
+			boolean[] faceShared = new boolean[complex.numberOfNSimplices(p)];
+			owner[p] = new int[faceShared.length];
+			faces(complex.cofaces(p + 1), owner[p + 1], shared, owner[p],
+					faceShared, executor);
+			int count = 0;
+			for (boolean s : faceShared)
+				if (s)
+					count++;
+			interfaces[p] = new int[count];
+			for (int f = 0, k = 0; f < faceShared.length; f++)
+				if (faceShared[f])
+					interfaces[p][k++] = f;
+			shared = faceShared;
+		}
+
+		// stable counting sort of the simplices of each dimension by owner
+		for (int p = 0; p <= n; p++) {
+			int[] o = owner[p];
+			int[] offset = new int[parts + 1];
+			for (int s = 0; s < o.length; s++)
+				offset[o[s] + 1]++;
+			for (int k = 0; k < parts; k++)
+				offset[k + 1] += offset[k];
+			int[] next = new int[parts];
+			System.arraycopy(offset, 0, next, 0, parts);
+			newToOld[p] = new int[o.length];
+			oldToNew[p] = new int[o.length];
+			for (int s = 0; s < o.length; s++) {
+				int i = next[o[s]]++;
+				newToOld[p][i] = s;
+				oldToNew[p][s] = i;
+			}
+			offsets[p] = offset;
+		}
+	}
+
+	/**
+	 * @return the partitioned complex
+	 */
+	public SimplicialComplex complex() {
+		return complex;
+	}
+
+	/**
+	 * @return the number of parts
+	 */
+	public int parts() {
+		return parts;
+	}
+
+	/**
+	 * @param p
+	 * @return the part owning each p-simplex
+	 */
+	public int[] owner(int p) {
+		return owner[p];
+	}
+
+	/**
+	 * @param p
+	 * @return the p-simplices belonging to the closure of the simplices of
+	 *         more than one part, in increasing order (none for the top
+	 *         dimension)
+	 */
+	public int[] interfaceSimplices(int p) {
+		return interfaces[p];
+	}
+
+	/**
+	 * @param p
+	 * @return the ranges of the new indices of the p-simplices owned by each
+	 *         part: part k owns <code>[offsets[k], offsets[k + 1])</code>
+	 */
+	public int[] offsets(int p) {
+		return offsets[p];
+	}
+
+	/**
+	 * @param p
+	 * @return the index in the complex of each p-simplex in partition order
+	 */
+	public int[] newToOld(int p) {
+		return newToOld[p];
+	}
+
+	/**
+	 * @param p
+	 * @return the index in partition order of each p-simplex of the complex
+	 */
+	public int[] oldToNew(int p) {
+		return oldToNew[p];
+	}
+
+	/**
+	 * @return the local complexes of the parts, with a ghost layer
+	 */
+	public GhostLayer ghostLayer() {
+		return new GhostLayer(this);
+	}
+
+	/**
+	 * @param p
+	 * @return the exterior derivative of dimension p in partition order
+	 */
+	public CSRMatrix d(int p) {
+		int q = Math.min(p + 1, complex.complexDimension());
+		return permute(SimplicialComplex.compressedRows(complex
+				.getSubspace(p).d()), newToOld[q], oldToNew[p]);
+	}
+
+	/**
+	 * @param p
+	 * @return the boundary operator of dimension p in partition order
+	 */
+	public CSRMatrix boundary(int p) {
+		return permute(SimplicialComplex.compressedRows(complex
+				.getSubspace(p).boundary()), newToOld[Math.max(p - 1, 0)],
+				oldToNew[p]);
+	}
+
+	/**
+	 * @param p
+	 * @return the Hodge star of dimension p in partition order
+	 */
+	public CSRMatrix star(int p) {
+		return permute(SimplicialComplex.compressedRows(complex
+				.getSubspace(p).star()), newToOld[p], oldToNew[p]);
+	}
+
+	/**
+	 * Renumber the rows and columns of an operator. The columns of each row
+	 * are kept in increasing order. The null operators of the extreme
+	 * dimensions (with a single row) are returned unchanged.
+	 *
+	 * @param rowNewToOld
+	 *            the original index of each row in the new order
+	 * @param columnOldToNew
+	 *            the new index of each column
+	 */
+	private static CSRMatrix permute(CompressedRows m, int[] rowNewToOld,
+			int[] columnOldToNew) {
+		if (m.numRows() != rowNewToOld.length)
+			// the null operators have no entries
+			return m instanceof CSRMatrix ? (CSRMatrix) m : new CSRMatrix(
+					m.numRows(), m.numColumns());
+		int nRows = rowNewToOld.length;
+		int[] newRowPtrs = new int[nRows + 1];
+		for (int r = 0; r < nRows; r++)
+			newRowPtrs[r + 1] = newRowPtrs[r]
+					+ m.rowPointer(rowNewToOld[r] + 1)
+					- m.rowPointer(rowNewToOld[r]);
+		int[] newColumns = new int[newRowPtrs[nRows]];
+		double[] newValues = new double[newRowPtrs[nRows]];
+		for (int r = 0; r < nRows; r++) {
+			int from = newRowPtrs[r];
+			int q = from;
+			for (int k = m.rowPointer(rowNewToOld[r]); k < m
+					.rowPointer(rowNewToOld[r] + 1); k++) {
+				// insertion in increasing column order; rows are short
+				int c = columnOldToNew[m.columnIndex(k)];
+				int i = q++;
+				while (i > from && newColumns[i - 1] > c) {
+					newColumns[i] = newColumns[i - 1];
+					newValues[i] = newValues[i - 1];
+					i--;
+				}
+				newColumns[i] = c;
+				newValues[i] = m.value(k);
+			}
+		}
+		return new CSRMatrix(nRows, m.numColumns(), newValues, newColumns,
+				newRowPtrs);
+	}
+
+	/**
+	 * Owner and interface flag of each face, from those of its cofaces
+	 */
+	private static void faces(final Incidence cofaces, final int[] owner,
+			final boolean[] shared, final int[] faceOwner,
+			final boolean[] faceShared, ExecutorService executor) {
+		Parallel.forRange(executor, faceOwner.length,
+				Parallel.chunks(executor), new Parallel.Range() {
+					public void run(int chunk, int from, int to) {
+						int[] targets = cofaces.targets();
+						for (int f = from; f < to; f++) {
+							int min = Integer.MAX_VALUE;
+							int max = -1;
+							boolean s = false;
+							for (int k = cofaces.start(f); k < cofaces.end(f); k++) {
+								int c = targets[k];
+								min = Math.min(min, owner[c]);
+								max = Math.max(max, owner[c]);
+								s |= shared[c];
+							}
+							faceOwner[f] = min;
+							faceShared[f] = s || min != max;
+						}
+					}
+				});
+	}
+
+	/**
+	 * @return the centroid of each simplex, with its coordinates stored in
+	 *         <code>[i * dim, (i + 1) * dim)</code>
+	 */
+	private static double[] centroids(SimplexTable simplices,
+			double[][] points) {
+		int dim = points[0].length;
+		int stride = simplices.stride();
+		double[] centroids = new double[simplices.size() * dim];
+		for (int s = 0; s < simplices.size(); s++)
+			for (int c = 0; c < stride; c++) {
+				double[] point = points[simplices.get(s, c)];
+				for (int x = 0; x < dim; x++)
+					centroids[s * dim + x] += point[x] / stride;
+			}
+		return centroids;
+	}
+
+	/**
+	 * Recursive coordinate bisection of points
+	 * 
+	 * @param centroids
+	 * @param dim
+	 *            the number of coordinates of each point
+	 * @param parts
+	 * @return the part of each point
+	 */
+	private static int[] bisect(double[] centroids, int dim, int parts) {
+		int n = centroids.length / dim;
+		int[] items = new int[n];
+		for (int i = 0; i < n; i++)
+			items[i] = i;
+		int[] part = new int[n];
+		bisect(centroids, dim, items, 0, n, 0, parts, part);
+		return part;
+	}
+
+	/**
+	 * Split items[from, to) in the given number of parts, numbered from
+	 * firstPart
+	 */
+	private static void bisect(double[] centroids, int dim, int[] items,
+			int from, int to, int firstPart, int parts, int[] part) {
+		if (parts == 1) {
+			for (int i = from; i < to; i++)
+				part[items[i]] = firstPart;
+			return;
+		}
+		int axis = 0;
+		double extent = -1;
+		for (int x = 0; x < dim; x++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				double c = centroids[items[i] * dim + x];
+				min = Math.min(min, c);
+				max = Math.max(max, c);
+			}
+			if (max - min > extent) {
+				extent = max - min;
+				axis = x;
+			}
+		}
+		int left = parts / 2;
+		int mid = from + (int) ((long) (to - from) * left / parts);
+		select(centroids, dim, axis, items, from, to, mid);
+		bisect(centroids, dim, items, from, mid, firstPart, left, part);
+		bisect(centroids, dim, items, mid, to, firstPart + left, parts - left,
+				part);
+	}
+
+	/**
+	 * Quickselect: reorder items[from, to) so that the items before position
+	 * k are smaller than those after it, comparing the coordinate along axis
+	 * (then the index, so that the split is deterministic)
+	 */
+	private static void select(double[] centroids, int dim, int axis,
+			int[] items, int from, int to, int k) {
+		int lo = from;
+		int hi = to - 1;
+		while (hi > lo) {
+			// median of three pivot
+			int m = (lo + hi) >>> 1;
+			if (less(centroids, dim, axis, items[m], items[lo]))
+				swap(items, lo, m);
+			if (less(centroids, dim, axis, items[hi], items[lo]))
+				swap(items, lo, hi);
+			if (less(centroids, dim, axis, items[hi], items[m]))
+				swap(items, m, hi);
+			int pivot = items[m];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (less(centroids, dim, axis, items[i], pivot))
+					i++;
+				while (less(centroids, dim, axis, pivot, items[j]))
+					j--;
+				if (i <= j)
+					swap(items, i++, j--);
+			}
+			if (k <= j)
+				hi = j;
+			else if (k >= i)
+				lo = i;
+			else
+				return;
+		}
+	}
+
+	private static boolean less(double[] centroids, int dim, int axis, int a,
+			int b) {
+		double x = centroids[a * dim + axis];
+		double y = centroids[b * dim + axis];
+		return x < y || (x == y && a < b);
+	}
+
+	private static void swap(int[] items, int i, int j) {
+		int t = items[i];
+		items[i] = items[j];
+		items[j] = t;
+	}
+}
@@ -1,13 +1,17 @@
 package jdec.dec;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 import jdec.linalg.CSRMatrix;
-import jdec.math.LexicographicalComparator;
 import jdec.math.Parity;
+import jdec.mesh.SimplexSort;
+import jdec.mesh.SimplexTable;
+import jdec.util.Parallel;
 import no.uib.cipr.matrix.Matrix;
 
 public class SimplexArray {
@@ -25,14 +29,31 @@ public class SimplexArray {
 	 * @return
 	 */
 	public static int[] simplexArraySearchSorted(int[][] s, int[][] v) {
-		int k = s[0].length;
-		if (s[0].length != v[0].length)
+		return simplexArraySearchSorted(SimplexTable.of(s), SimplexTable.of(v));
+	}
+
+	/**
+	 * Find the row indices (of s) corresponding to the simplices stored in the
+	 * rows of simplex table v. The rows of s must be stored in lexicographical
+	 * order.
+	 * 
+	 * @param s
+	 * @param v
+	 * @return
+	 */
+	public static int[] simplexArraySearchSorted(SimplexTable s, SimplexTable v) {
+		if (s.stride() != v.stride())
 			throw new IllegalArgumentException("Number of columns must agree");
 
-		LexicographicalComparator comparator = new LexicographicalComparator(k);
-		int[] indices = new int[v.length];
-		for (int i = 0; i < v.length; i++)
-			indices[i] = Arrays.binarySearch(s, v[i], comparator);
+		int[] indices = new int[v.size()];
+		if (v.hasArray())
+			for (int i = 0; i < indices.length; i++)
+				indices[i] = s.binarySearch(v.data(), v.offset(i));
+		else {
+			int[] row = new int[v.stride()];
+			for (int i = 0; i < indices.length; i++)
+				indices[i] = s.binarySearch(v.copyRow(i, row), 0);
+		}
 
 		return indices;
 
@@ -54,76 +75,296 @@ public class SimplexArray {
 
 	}
 
+	/**
+	 * Compute the relative parity of a table of simplices
+	 * 
+	 * @return
+	 */
+	public static int[] simplexParity(SimplexTable s) {
+		int n = s.size();
+		int[] parity = new int[n];
+
+		if (s.hasArray())
+			for (int i = 0; i < n; i++)
+				parity[i] = Parity.parityWRToSorted(s.data(), s.offset(i),
+						s.stride());
+		else {
+			int[] row = new int[s.stride()];
+			for (int i = 0; i < n; i++)
+				parity[i] = Parity.parityWRToSorted(s.copyRow(i, row), 0,
+						s.stride());
+		}
+
+		return parity;
+
+	}
+
+	/**
+	 * Sort the vertices of every simplex of the table in place, and return the
+	 * parity of each simplex with respect to its sorted version
+	 * 
+	 * @param s
+	 * @return
+	 */
+	public static int[] canonicalize(SimplexTable s) {
+		return canonicalize(s, null);
+	}
+
+	/**
+	 * Sort the vertices of every simplex of the table in place, using the
+	 * threads of an executor, and return the parity of each simplex with
+	 * respect to its sorted version
+	 * 
+	 * @param s
+	 * @param executor
+	 *            the executor, or null to run in the calling thread
+	 * @return
+	 */
+	public static int[] canonicalize(final SimplexTable s,
+			ExecutorService executor) {
+		final int[] parity = new int[s.size()];
+		final int[] data = s.data();
+		Parallel.forRange(executor, s.size(), Parallel.chunks(executor),
+				new Parallel.Range() {
+					public void run(int chunk, int from, int to) {
+						for (int i = from; i < to; i++)
+							parity[i] = Parity.canonicalize(data, s.offset(i),
+									s.stride());
+					}
+				});
+		return parity;
+	}
+
 	static class BoundaryOperator {
-		final int[][] uniqueFaces;
+		final SimplexTable uniqueFaces;
 		final Matrix operator;
 
-		public BoundaryOperator(int[][] uFaces, Matrix op) {
+		public BoundaryOperator(SimplexTable uFaces, Matrix op) {
 			this.uniqueFaces = uFaces;
 			this.operator = op;
 
 		}
 	}
 
-	public static BoundaryOperator simplexArrayBoundary(int[][] s, int[] parity) {
+	/**
+	 * Compute the faces of an array of simplices and the boundary operator
+	 * mapping the simplices to their faces. The vertices of each simplex must
+	 * be sorted.
+	 * 
+	 * @param s
+	 *            the simplices
+	 * @param parity
+	 *            the orientation of each simplex w.r.t. its sorted version
+	 * @return the unique faces, in lexicographical order, and the boundary
+	 *         operator
+	 */
+	public static BoundaryOperator simplexArrayBoundary(SimplexTable s,
+			int[] parity) {
+		return simplexArrayBoundary(s, parity, null);
+	}
+
+	/**
+	 * Compute the faces of an array of simplices and the boundary operator
+	 * mapping the simplices to their faces, using the threads of an executor.
+	 * The result is identical to the one computed in a single thread.
+	 * 
+	 * In a single thread, if the vertices of a face can be packed in a long
+	 * the faces are deduplicated with a hash table, otherwise they are sorted.
+	 * 
+	 * @param s
+	 *            the simplices
+	 * @param parity
+	 *            the orientation of each simplex w.r.t. its sorted version
+	 * @param executor
+	 *            the executor, or null to run in the calling thread
+	 * @return the unique faces, in lexicographical order, and the boundary
+	 *         operator
+	 */
+	public static BoundaryOperator simplexArrayBoundary(final SimplexTable s,
+			final int[] parity, ExecutorService executor) {
+		if (!s.hasArray())
+			// the faces are generated by copies from the backing array
+			return simplexArrayBoundary(s.withArray(), parity, executor);
 
-		int nSimplices = s.length;
-		int facesPerSimplex = s[0].length;
-		int nFaces = nSimplices * facesPerSimplex;
+		final int nSimplices = s.size();
+		final int facesPerSimplex = s.stride();
+		final int faceStride = facesPerSimplex - 1;
+		final int nFaces = nSimplices * facesPerSimplex;
+		final int chunks = Parallel.chunks(executor);
 
-		// faces is an array constructed as follows:
-		// faces[ . , [0,n-1) ] are the indices of the faces
-		// faces[ . , n-1 ] is the index of the simplex whose boundary produced
-		// the face
-		// faces[ . , n] is the orientation of the face in the boundary
-		// where n is the dimension of the input simplices
-		int[][] faces = new int[nFaces][facesPerSimplex + 1];
-		for (int i = 0; i < facesPerSimplex; i++) {
-			int fStart = nSimplices * i;
-			for (int f = fStart; f < fStart + nSimplices; f++) {
-				System.arraycopy(s[f], 0, faces[f], 0, i);
-				System.arraycopy(s[f], i + 1, faces[f], i, facesPerSimplex - i
-						- 1);
-				faces[f][facesPerSimplex - 1] = f - fStart;
-				faces[f][facesPerSimplex] = (parity[i] + i) % 2 == 0 ? 1 : -1;
-			}
+		if (executor == null) {
+			int bits = packingBits(s);
+			if (bits > 0 && bits * faceStride < Long.SIZE)
+				return hashBoundary(s, parity, bits);
 		}
 
+		// faces is a table constructed as follows: face f is obtained by
+		// removing the i-th vertex from simplex j, where f = i * nSimplices + j.
+		// Hence, the generating simplex and the orientation of the face in its
+		// boundary need not be stored and can be recovered from f alone.
+		final SimplexTable faces = new SimplexTable(nFaces, faceStride);
+		final int[] sData = s.data();
+		final int[] fData = faces.data();
+		Parallel.forRange(executor, nSimplices, chunks, new Parallel.Range() {
+			public void run(int chunk, int from, int to) {
+				for (int i = 0; i < facesPerSimplex; i++) {
+					int fPos = (nSimplices * i + from) * faceStride;
+					int sPos = from * facesPerSimplex;
+					for (int j = from; j < to; j++, sPos += facesPerSimplex, fPos += faceStride) {
+						System.arraycopy(sData, sPos, fData, fPos, i);
+						System.arraycopy(sData, sPos + i + 1, fData, fPos + i,
+								faceStride - i);
+					}
+				}
+			}
+		});
+
 		// sort faces lexicographically
-		LexicographicalComparator comparator = LexicographicalComparator
-				.getComparator(facesPerSimplex - 1);
-		Arrays.sort(faces, comparator);
-
-		// find unique faces
-		IntList indices = new IntArrayList();
-		int[] prevFace = null;
-		for (int i = 0; i < nFaces; i++) {
-			if (prevFace == null || comparator.compare(prevFace, faces[i]) != 0)
-				indices.add(i);
-			prevFace = faces[i];
-		}
+		final int[] order = SimplexSort.sortedOrder(faces, executor);
+
+		// find unique faces: count them in each chunk, then compute the
+		// position of the first unique face of each chunk with a prefix sum
+		final int[] firstUnique = new int[chunks + 1];
+		Parallel.forRange(executor, nFaces, chunks, new Parallel.Range() {
+			public void run(int chunk, int from, int to) {
+				int count = 0;
+				for (int q = from; q < to; q++)
+					if (q == 0 || faces.compareRows(order[q - 1], order[q]) != 0)
+						count++;
+				firstUnique[chunk + 1] = count;
+			}
+		});
+		for (int c = 0; c < chunks; c++)
+			firstUnique[c + 1] += firstUnique[c];
+		final int nUniqueFaces = firstUnique[chunks];
 
 		// build unique faces list and boundary operator arrays
+		final SimplexTable uniqueFaces = new SimplexTable(nUniqueFaces,
+				faceStride);
+		final int[] uData = uniqueFaces.data();
+		final int[] rowPtrs = new int[nUniqueFaces + 1];
+		final int[] csrIndices = new int[nFaces];
+		final double[] csrData = new double[nFaces];
+		Parallel.forRange(executor, nFaces, chunks, new Parallel.Range() {
+			public void run(int chunk, int from, int to) {
+				int c = firstUnique[chunk];
+				for (int q = from; q < to; q++) {
+					if (q == 0
+							|| faces.compareRows(order[q - 1], order[q]) != 0) {
+						// row pointers are the indices of the unique faces
+						rowPtrs[c] = q;
+						System.arraycopy(fData, faces.offset(order[q]), uData,
+								c++ * faceStride, faceStride);
+					}
+					// the column indices are the generating simplices indices
+					// matrix elements are +1/-1 according to relative
+					// orientation
+					int i = order[q] / nSimplices;
+					int j = order[q] - i * nSimplices;
+					csrIndices[q] = j;
+					csrData[q] = (parity[j] + i) % 2 == 0 ? 1 : -1;
+				}
+			}
+		});
+		rowPtrs[nUniqueFaces] = nFaces;
 
-		int nUniqueFaces = indices.size();
-		int[][] uniqueFaces = new int[nUniqueFaces][];
-		int[] rowPtrs = new int[nUniqueFaces + 1];
-		int c = 0;
-		for (int f : indices) {
-			// row pointers are the indices of the unique faces
-			rowPtrs[c] = f;
-			uniqueFaces[c++] = faces[f];
+		return new BoundaryOperator(uniqueFaces, new CSRMatrix(nUniqueFaces,
+				nSimplices, csrData, csrIndices, rowPtrs));
+	}
+
+	/**
+	 * @return the number of bits needed to store any vertex index of s, or -1
+	 *         if s contains negative indices
+	 */
+	private static int packingBits(SimplexTable s) {
+		int[] data = s.data();
+		int max = 0;
+		for (int i = 0; i < s.size() * s.stride(); i++) {
+			if (data[i] < 0)
+				return -1;
+			if (data[i] > max)
+				max = data[i];
 		}
-		rowPtrs[nUniqueFaces] = nFaces;
+		return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(max));
+	}
+
+	/**
+	 * Same as {@link #simplexArrayBoundary(SimplexTable, int[])}, with faces
+	 * packed in a long key (bits per vertex, first vertex in the most
+	 * significant position) and deduplicated with a hash table. Since the keys
+	 * are non-negative, their numerical order is the lexicographical order of
+	 * the faces; only the unique keys are sorted, and the faces are bucketed by
+	 * key in generation order, which produces the same operator as the stable
+	 * sort of all the faces.
+	 */
+	private static BoundaryOperator hashBoundary(SimplexTable s, int[] parity,
+			int bits) {
+		int nSimplices = s.size();
+		int facesPerSimplex = s.stride();
+		int faceStride = facesPerSimplex - 1;
+		int nFaces = nSimplices * facesPerSimplex;
+		int[] sData = s.data();
+
+		// assign an identifier to each distinct face, in order of appearance
+		Long2IntOpenHashMap keyToId = new Long2IntOpenHashMap(nSimplices);
+		keyToId.defaultReturnValue(-1);
+		LongArrayList keys = new LongArrayList(nSimplices);
+		IntArrayList counts = new IntArrayList(nSimplices);
+		int[] faceId = new int[nFaces];
+		for (int i = 0, f = 0; i < facesPerSimplex; i++)
+			for (int j = 0, sPos = 0; j < nSimplices; j++, sPos += facesPerSimplex, f++) {
+				long key = 0;
+				for (int c = 0; c < facesPerSimplex; c++)
+					if (c != i)
+						key = (key << bits) | sData[sPos + c];
+				int id = keyToId.get(key);
+				if (id < 0) {
+					id = keys.size();
+					keyToId.put(key, id);
+					keys.add(key);
+					counts.add(0);
+				}
+				counts.set(id, counts.getInt(id) + 1);
+				faceId[f] = id;
+			}
+		keyToId = null;
+
+		// rank the unique faces in lexicographical order
+		int nUniqueFaces = keys.size();
+		long[] sortedKeys = keys.toLongArray();
+		Arrays.sort(sortedKeys);
+		int[] rank = new int[nUniqueFaces];
+		for (int id = 0; id < nUniqueFaces; id++)
+			rank[id] = Arrays.binarySearch(sortedKeys, keys.getLong(id));
+
+		// unpack the unique faces
+		SimplexTable uniqueFaces = new SimplexTable(nUniqueFaces, faceStride);
+		int[] uData = uniqueFaces.data();
+		long mask = (1L << bits) - 1;
+		for (int u = 0; u < nUniqueFaces; u++) {
+			long key = sortedKeys[u];
+			for (int c = faceStride - 1; c >= 0; c--, key >>>= bits)
+				uData[u * faceStride + c] = (int) (key & mask);
+		}
+
+		// row pointers are the prefix sums of the number of occurrences
+		int[] rowPtrs = new int[nUniqueFaces + 1];
+		for (int id = 0; id < nUniqueFaces; id++)
+			rowPtrs[rank[id] + 1] = counts.getInt(id);
+		for (int u = 0; u < nUniqueFaces; u++)
+			rowPtrs[u + 1] += rowPtrs[u];
 
 		// the column indices are the generating simplices indices
 		// matrix elements are +1/-1 according to relative orientation
-		int[] csrIndices = new int[faces.length];
-		double[] csrData = new double[faces.length];
-		for (int i = 0; i < faces.length; i++) {
-			csrIndices[i] = faces[i][facesPerSimplex - 1];
-			csrData[i] = faces[i][facesPerSimplex];
-		}
+		int[] next = Arrays.copyOf(rowPtrs, nUniqueFaces);
+		int[] csrIndices = new int[nFaces];
+		double[] csrData = new double[nFaces];
+		for (int i = 0, f = 0; i < facesPerSimplex; i++)
+			for (int j = 0; j < nSimplices; j++, f++) {
+				int q = next[rank[faceId[f]]]++;
+				csrIndices[q] = j;
+				csrData[q] = (parity[j] + i) % 2 == 0 ? 1 : -1;
+			}
 		return new BoundaryOperator(uniqueFaces, new CSRMatrix(nUniqueFaces,
 				nSimplices, csrData, csrIndices, rowPtrs));
 	}
@@ -1,99 +1,223 @@
 package jdec.dec;
 
-import it.unimi.dsi.fastutil.objects.Object2IntAVLTreeMap;
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectSet;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import jdec.dec.SimplexArray.BoundaryOperator;
 import jdec.linalg.CSRMatrix;
+import jdec.linalg.CompressedRows;
+import jdec.linalg.MappedCSRMatrix;
 import jdec.math.Circumcenter;
-import jdec.math.LexicographicalComparator;
+import jdec.math.Coordinates;
+import jdec.math.Parity;
 import jdec.math.Volume;
+import jdec.math.Workspace;
+import jdec.mesh.Components;
+import jdec.mesh.Incidence;
+import jdec.mesh.MappedSimplexTable;
 import jdec.mesh.Simplex;
+import jdec.mesh.SimplexSort;
+import jdec.mesh.SimplexTable;
 import jdec.mesh.SimplicialMesh;
+import jdec.util.ChannelIO;
+import jdec.util.MappedDoubleArray;
+import jdec.util.MappedIntArray;
+import jdec.util.Parallel;
 import no.uib.cipr.matrix.Matrix;
 
 public class SimplicialComplex {
 
-	private final SimplicialMesh mesh;
+	private static final int SNAPSHOT_MAGIC = 0x4A444543; // "JDEC"
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int HAS_CIRCUMCENTERS = 1;
+	private static final int HAS_PRIMAL_VOLUMES = 2;
+	private static final int HAS_DUAL_VOLUMES = 4;
 
-	private final double[][] vertices;
-	private int[][][] simplices;
-	private Matrix[] chainComplex;
-	private Matrix[] cochainComplex;
+	private final int embeddingDimension;
 
-	private int[][] parities;
+	private double[][] vertices;
+	/**
+	 * Flat copy of the vertices for the batch geometry kernels, built on
+	 * demand
+	 */
+	private Coordinates coordinates;
+	private final ExecutorService executor;
 
 	private Subspace[] subspaces;
 
+	/**
+	 * Lowest dimension whose simplices have been built
+	 */
+	private int lowestDimension;
+	/**
+	 * Whether the tables and operators live in a file opened with map(File)
+	 */
+	private boolean mapped;
+
 	class Subspace {
-		private int dimension;
-		private Matrix boundary;
-		private Matrix d;
+		private final int dimension;
+		// combinatorial data is built on first use (see buildSkeleton), and
+		// published through volatile fields
+		private volatile SimplexTable simplices;
+		private int[] simplexParity;
+		private volatile Matrix boundary;
+		private volatile Matrix d;
 		private Matrix star;
 		private Matrix starInv;
-		private int[][] simplices;
-		private int[] simplexParity;
-		private int nSimplices;
-		private SimplicialComplex complex;
 		private double[] primalVolume;
 		private double[] dualVolume;
 		private double[][] circumcenter;
+		// geometry stored in a snapshot opened with map(File), used until
+		// resetGeometry() is called
+		private MappedDoubleArray mappedCircumcenter;
+		private MappedDoubleArray mappedPrimalVolume;
+		private MappedDoubleArray mappedDualVolume;
+		// incidence between the vertices and the simplices of this subspace,
+		// built on first use (see buildVertexIncidence)
+		private volatile Incidence vertexStar;
+		private Incidence vertexLink;
 
-		private Simplex[] indexToSimplex;
-		private Object2IntMap<Simplex> simplexToIndex;
+		Subspace(int dimension) {
+			this.dimension = dimension;
+		}
 
-		public Simplex simplex(int i) {
-			if (indexToSimplex == null)
-				buildSimplices();
-			return indexToSimplex[i];
+		public int dimension() {
+			return dimension;
 		}
 
-		private void buildSimplices() {
-			indexToSimplex = new Simplex[simplices.length];
-			simplexToIndex = new Object2IntAVLTreeMap<Simplex>();
-			for (int i = 0; i < nSimplices; i++) {
-				Simplex simplex = new Simplex(simplices[i], simplexParity[i]);
-				indexToSimplex[i] = simplex;
-				simplexToIndex.put(simplex, i);
+		/**
+		 * @return the simplices of this subspace, sorted lexicographically
+		 */
+		public SimplexTable simplices() {
+			SimplexTable s = simplices;
+			if (s == null) {
+				buildSkeleton(dimension);
+				s = simplices;
 			}
+			return s;
+		}
 
+		/**
+		 * @return the number of simplices of this subspace
+		 */
+		public int size() {
+			return simplices().size();
+		}
+
+		/**
+		 * @return the orientation of each simplex w.r.t. its sorted version
+		 */
+		int[] parity() {
+			simplices();
+			return simplexParity;
+		}
+
+		/**
+		 * @param i
+		 * @return a new Simplex object for the i-th simplex
+		 */
+		public Simplex simplex(int i) {
+			return new Simplex(simplices().row(i), parity()[i]);
 		}
 
 		public int simplexToIndex(Simplex s) {
-			if (simplexToIndex == null)
-				buildSimplices();
-			return simplexToIndex.get(s);
+			return indexOf(s.vertices(), 0);
 		}
 
+		/**
+		 * Find a simplex by binary search in the (sorted) simplex table.
+		 * 
+		 * @param vertices
+		 *            the vertices of the simplex, in any order
+		 * @param offset
+		 *            the position of the first vertex in the array
+		 * @return the index of the simplex, or -1 if it does not belong to
+		 *         this subspace
+		 */
+		public int indexOf(int[] vertices, int offset) {
+			return simplices().indexOf(vertices, offset);
+		}
+
+		/**
+		 * Relative parity between a simplex of this subspace and the same
+		 * simplex given by a tuple of vertices.
+		 * 
+		 * @param index
+		 *            the index of the simplex, as returned by indexOf
+		 * @param vertices
+		 * @param offset
+		 *            the position of the first vertex in the array
+		 * @return 0 if the tuple has the same orientation as the simplex, 1
+		 *         otherwise
+		 */
+		public int relativeParity(int index, int[] vertices, int offset) {
+			return (parity()[index] + Parity.parityWRToSorted(vertices,
+					offset, dimension + 1)) % 2;
+		}
+
+		/**
+		 * @return the exterior derivative acting on the cochains of this
+		 *         subspace
+		 */
 		public Matrix d() {
-			return d;
+			Matrix m = d;
+			if (m == null)
+				m = buildD(dimension);
+			return m;
 		}
 
+		/**
+		 * @return the boundary operator acting on the chains of this subspace
+		 */
 		public Matrix boundary() {
-			return boundary;
+			Matrix m = boundary;
+			if (m == null) {
+				buildSkeleton(Math.max(dimension - 1, 0));
+				m = buildBoundary(dimension);
+			}
+			return m;
 		}
-
 		public double[] circumcenter(int index) {
-			if (circumcenter == null)
+			if (circumcenter == null) {
+				if (mappedCircumcenter != null) {
+					int width = embeddingDimension();
+					double[] center = new double[width];
+					mappedCircumcenter.get(index * width, center, 0,
+							width);
+					return center;
+				}
 				computeCircumcenters();
+			}
 			return circumcenter[index];
 		}
 
 		public double primalVolume(int index) {
-			if (primalVolume == null)
+			if (primalVolume == null) {
+				if (mappedPrimalVolume != null)
+					return mappedPrimalVolume.get(index);
 				computePrimalVolume();
+			}
 			return primalVolume[index];
 		}
 
 		public double dualVolume(int index) {
-			if (dualVolume == null)
+			if (dualVolume == null) {
+				if (mappedDualVolume != null)
+					return mappedDualVolume.get(index);
 				computeDualVolumes();
+			}
 			return dualVolume[index];
 		}
 
@@ -110,79 +234,272 @@ public class SimplicialComplex {
 		}
 
 		public void resetGeometry() {
+			this.mappedCircumcenter = null;
+			this.mappedPrimalVolume = null;
+			this.mappedDualVolume = null;
 			this.circumcenter = null;
 			this.primalVolume = null;
 			this.dualVolume = null;
 			this.star = null;
 			this.starInv = null;
+			synchronized (SimplicialComplex.this) {
+				coordinates = null;
+			}
 		}
 
+		/**
+		 * Compute the circumcenters of all the simplices, split in chunks run
+		 * by the executor of the complex; each simplex is computed
+		 * independently, so that the result does not depend on the executor
+		 */
 		private void computeCircumcenters() {
-			if (circumcenter == null)
-				circumcenter = new double[nSimplices][embeddingDimension()];
-			for (int i = 0; i < nSimplices; i++)
-				circumcenter[i] = Circumcenter.circumcenter(
-						SimplicialComplex.this.vertices, simplices[i]);
+			final SimplexTable simplices = simplices();
+			final int nSimplices = simplices.size();
+			final int width = embeddingDimension();
+			final double[][] centers = new double[nSimplices][];
+			final Coordinates points = simplices instanceof MappedSimplexTable ? null
+					: getCoordinates();
+			Parallel.forRange(executor, nSimplices, Parallel.chunks(executor),
+					new Parallel.Range() {
+						public void run(int chunk, int from, int to) {
+							for (int i = from; i < to; i++)
+								centers[i] = new double[width];
+							Workspace workspace = new Workspace(simplices
+									.stride());
+							if (points != null) {
+								Circumcenter.circumcenters(points,
+										simplices.data(), simplices.stride(),
+										from, to, centers, workspace);
+								return;
+							}
+							// a mapped table has no backing array: row by row
+							int[] simplex = new int[simplices.stride()];
+							for (int i = from; i < to; i++)
+								Circumcenter.circumcenter(
+										SimplicialComplex.this.vertices,
+										simplices.copyRow(i, simplex),
+										centers[i], workspace);
+						}
+					});
+			circumcenter = centers;
 		}
 
+		private double[] computeCircumcenter(int[] simplex) {
+			double[] center = new double[embeddingDimension()];
+			Circumcenter.circumcenter(SimplicialComplex.this.vertices, simplex,
+					center);
+			return center;
+		}
+
+		/**
+		 * Compute the volumes of all the simplices, split in chunks run by the
+		 * executor of the complex
+		 */
 		private void computePrimalVolume() {
-			if (primalVolume == null)
-				primalVolume = new double[nSimplices];
+			final SimplexTable simplices = simplices();
+			final int nSimplices = simplices.size();
+			final double[] volumes = new double[nSimplices];
+			final Coordinates points = simplices instanceof MappedSimplexTable ? null
+					: getCoordinates();
+			final boolean signed = dimension == embeddingDimension();
+			Parallel.forRange(executor, nSimplices, Parallel.chunks(executor),
+					new Parallel.Range() {
+						public void run(int chunk, int from, int to) {
+							Workspace workspace = new Workspace(simplices
+									.stride());
+							if (points != null) {
+								if (signed)
+									Volume.signedVolumes(points,
+											simplices.data(), simplices.stride(),
+											from, to, volumes, workspace);
+								else
+									Volume.unsignedVolumes(points,
+											simplices.data(), simplices.stride(),
+											from, to, volumes, workspace);
+								return;
+							}
+							int[] simplex = new int[simplices.stride()];
+							for (int i = from; i < to; i++)
+								volumes[i] = computePrimalVolume(
+										simplices.copyRow(i, simplex), workspace);
+						}
+					});
+			primalVolume = volumes;
+		}
+
+		private double computePrimalVolume(int[] simplex, Workspace workspace) {
 			if (dimension == embeddingDimension())
-				for (int i = 0; i < nSimplices; i++)
-					primalVolume[i] = Volume.signedVolume(
-							SimplicialComplex.this.vertices, simplices[i]);
+				return Volume.signedVolume(SimplicialComplex.this.vertices,
+						simplex, workspace);
 			else
-				for (int i = 0; i < nSimplices; i++)
-					primalVolume[i] = Volume.unsignedVolume(
-							SimplicialComplex.this.vertices, simplices[i]);
-
+				return Volume.unsignedVolume(SimplicialComplex.this.vertices,
+						simplex, workspace);
 		}
 
+		/**
+		 * Compute the dual volumes of the simplices of this subspace. The dual
+		 * cell of a p-simplex is made of one simplex per chain of cofaces
+		 * from it to an n-simplex, spanned by the circumcenters of the
+		 * simplices of the chain. The chains are enumerated by walking up
+		 * the rows of the boundary operators, without recursion nor
+		 * allocation. Each simplex sums the volumes of its own chains, so
+		 * that the simplices are split in chunks run by the executor of the
+		 * complex, with a result independent of the executor.
+		 */
 		private void computeDualVolumes() {
-			for (Subspace sp : subspaces)
-				sp.dualVolume = new double[sp.nSimplices];
-			double[][] centers = new double[complexDimension() + 1][];
-			for (int[] s : simplices)
-				computeDualVolume(new Simplex(s), centers, complexDimension());
+			final int n = complexDimension();
+			final int p = dimension;
+			final int nSimplices = size();
+			// the incidences and circumcenters of the dimensions above
+			final Incidence[] up = new Incidence[n + 1];
+			final double[][][] centers = new double[n + 1][][];
+			for (int q = p; q <= n; q++) {
+				if (q > p)
+					up[q] = cofaces(q);
+				centers[q] = subspaces[q].circumcenters();
+			}
+			final double[] volumes = new double[nSimplices];
+			Parallel.forRange(executor, nSimplices, Parallel.chunks(executor),
+					new Parallel.Range() {
+						public void run(int chunk, int from, int to) {
+							Workspace workspace = new Workspace(n + 1);
+							double[][] chainCenters = new double[n + 1][];
+							int[] chain = new int[n + 1];
+							int[] position = new int[n + 1];
+							for (int s = from; s < to; s++) {
+								chainCenters[p] = centers[p][s];
+								if (p == n) {
+									volumes[s] = Volume.unsignedVolume(
+											chainCenters, n, n + 1, workspace);
+									continue;
+								}
+								double volume = 0;
+								chain[p] = s;
+								int q = p + 1;
+								position[q] = up[q].start(s);
+								while (q > p) {
+									if (position[q] == up[q].end(chain[q - 1])) {
+										q--;
+										continue;
+									}
+									int c = up[q].targets()[position[q]++];
+									chain[q] = c;
+									chainCenters[q] = centers[q][c];
+									if (q == n)
+										volume += Volume.unsignedVolume(
+												chainCenters, p, n + 1,
+												workspace);
+									else {
+										q++;
+										position[q] = up[q].start(c);
+									}
+								}
+								volumes[s] = volume;
+							}
+						}
+					});
+			dualVolume = volumes;
 		}
 
 		/**
-		 * Compute all the dual volume of this simplex and also add all the
-		 * contributions to the dual volumes of sub-elements that are related to
-		 * this one by a bounding relationship
-		 * 
-		 * @param s
+		 * @return the circumcenters of all the simplices, computed if needed
+		 *         (or copied from the file of a mapped complex)
+		 */
+		private double[][] circumcenters() {
+			if (circumcenter != null)
+				return circumcenter;
+			if (mappedCircumcenter == null) {
+				computeCircumcenters();
+				return circumcenter;
+			}
+			int width = embeddingDimension();
+			double[][] centers = new double[size()][width];
+			for (int i = 0; i < centers.length; i++)
+				mappedCircumcenter.get(i * width, centers[i], 0, width);
+			return centers;
+		}
+
+		/**
+		 * Add (or remove) the contributions of an n-simplex to the dual
+		 * volumes of itself and of its faces, enumerating the chains of faces
+		 * from it with explicit stacks; the faces are found by binary search
+		 * in the tables. The dual volumes of all the dimensions must have been
+		 * computed.
+		 *
+		 * @param index
+		 *            the index of the simplex in this (top-level) subspace
+		 * @param weight
+		 *            1 to add the contributions, -1 to remove them
 		 * @param centers
-		 * @param dimension
+		 *            scratch array of n + 1 entries
+		 * @param faces
+		 *            scratch array of n + 1 entries
+		 * @param position
+		 *            scratch array of n + 1 entries
+		 * @param workspace
 		 */
-		private void computeDualVolume(Simplex s, double[][] centers,
-				int dimension) {
-			Subspace sp = subspaces[dimension];
-			int index = sp.simplexToIndex(s);
-			centers[dimension] = sp.circumcenter(index);
-			sp.dualVolume[index] += Volume.unsignedVolume(centers, dimension,
-					centers.length);
-			if (dimension > 0) {
-				for (Simplex bs : s.boundary())
-					computeDualVolume(bs, centers, dimension - 1);
+		private void addDualVolumes(int index, double weight,
+				double[][] centers, int[][] faces, int[] position,
+				Workspace workspace) {
+			int n = dimension;
+			faces[n] = simplices().copyRow(index,
+					faces[n] == null ? new int[n + 1] : faces[n]);
+			centers[n] = circumcenter(index);
+			dualVolume[index] += weight
+					* Volume.unsignedVolume(centers, n, n + 1, workspace);
+			int q = n;
+			position[n] = 0;
+			while (q <= n) {
+				if (q == 0 || position[q] > q) {
+					q++;
+					continue;
+				}
+				// the face of faces[q] without its vertex at position[q]
+				int skip = position[q]++;
+				if (faces[q - 1] == null)
+					faces[q - 1] = new int[q];
+				for (int c = 0, k = 0; c <= q; c++)
+					if (c != skip)
+						faces[q - 1][k++] = faces[q][c];
+				Subspace sp = subspaces[q - 1];
+				int f = sp.simplices().binarySearch(faces[q - 1], 0);
+				centers[q - 1] = sp.circumcenter(f);
+				sp.dualVolume[f] += weight
+						* Volume.unsignedVolume(centers, q - 1, n + 1,
+								workspace);
+				q--;
+				position[q] = 0;
 			}
 		}
 
+		/**
+		 * Build the diagonal Hodge star and its inverse, split in chunks run
+		 * by the executor of the complex
+		 */
 		private void constructHodge() {
-			double[] dataStar = new double[nSimplices];
-			double[] dataStarInv = new double[nSimplices];
-			int[] rowptr = new int[nSimplices + 1];
-			int[] cols = new int[nSimplices];
-			double sign = 1;
-			if (dimension * (complexDimension() - dimension) % 2 != 0)
-				sign = -1;
-			for (int i = 0; i < nSimplices; i++) {
-				dataStar[i] = dualVolume(i) / primalVolume(i);
-				dataStarInv[i] = sign / dataStar[i];
-				rowptr[i] = i;
-				cols[i] = i;
+			final int nSimplices = size();
+			final double[] dataStar = new double[nSimplices];
+			final double[] dataStarInv = new double[nSimplices];
+			final int[] rowptr = new int[nSimplices + 1];
+			final int[] cols = new int[nSimplices];
+			final double sign = dimension * (complexDimension() - dimension)
+					% 2 != 0 ? -1 : 1;
+			if (nSimplices > 0) {
+				// the volumes are computed (in parallel) before the loop
+				dualVolume(0);
+				primalVolume(0);
 			}
+			Parallel.forRange(executor, nSimplices, Parallel.chunks(executor),
+					new Parallel.Range() {
+						public void run(int chunk, int from, int to) {
+							for (int i = from; i < to; i++) {
+								dataStar[i] = dualVolume(i) / primalVolume(i);
+								dataStarInv[i] = sign / dataStar[i];
+								rowptr[i] = i;
+								cols[i] = i;
+							}
+						}
+					});
 			rowptr[nSimplices] = nSimplices;
 			star = new CSRMatrix(nSimplices, nSimplices, dataStar, cols, rowptr);
 			starInv = new CSRMatrix(nSimplices, nSimplices, dataStarInv, cols,
@@ -191,25 +508,392 @@ public class SimplicialComplex {
 	}
 
 	public SimplicialComplex(SimplicialMesh mesh) {
-		this.mesh = mesh;
-		this.vertices = mesh.getVertices();
-		buildComplex(mesh.getElements());
+		this(mesh, null);
+	}
+
+	/**
+	 * Build the complex of a mesh using the threads of an executor. The result
+	 * is identical to the one built in a single thread.
+	 * 
+	 * @param mesh
+	 * @param executor
+	 *            the executor, or null to build in the calling thread
+	 */
+	public SimplicialComplex(SimplicialMesh mesh, ExecutorService executor) {
+		this(mesh, executor, false);
+	}
+
+	/**
+	 * Build the complex of a mesh. In lazy mode, only the top-level simplices
+	 * are built: the simplices and the boundary operator of each dimension
+	 * are computed the first time they are needed (building all the higher
+	 * dimensions they depend on), as are the exterior derivatives. Use
+	 * {@link #buildSkeleton(int)} to request a given dimension explicitly.
+	 * 
+	 * @param mesh
+	 * @param executor
+	 *            the executor, or null to build in the calling thread
+	 * @param lazy
+	 *            whether to defer the construction of the lower dimensions
+	 */
+	public SimplicialComplex(SimplicialMesh mesh, ExecutorService executor,
+			boolean lazy) {
+		this(new Builder(mesh.getVertices(), mesh.manifoldDimension() + 1,
+				mesh.getElements().length).add(mesh.getElements())
+				.executor(executor).lazy(lazy));
+	}
+
+	/**
+	 * Creates a complex with empty subspaces, to be filled by the caller
+	 */
+	private SimplicialComplex(double[][] vertices, int embeddingDimension,
+			int nDimensions, ExecutorService executor) {
+		this.embeddingDimension = embeddingDimension;
+		this.vertices = vertices;
+		this.executor = executor;
+		this.subspaces = new Subspace[nDimensions];
+		for (int i = 0; i < nDimensions; i++)
+			subspaces[i] = new Subspace(i);
+		this.lowestDimension = 0;
 	}
 
 	public SimplicialComplex(double[][] points, int[][] elements) {
-		this.mesh = new SimplicialMesh(points, elements);
-		this.vertices = mesh.getVertices();
-		buildComplex(mesh.getElements());
+		this(points, elements, null);
+	}
+
+	public SimplicialComplex(double[][] points, int[][] elements,
+			ExecutorService executor) {
+		this(new Builder(points, elements[0].length, elements.length).add(
+				elements).executor(executor));
 	}
 
 	public SimplicialComplex(double[][] points, Collection<Simplex> elements) {
-		this.mesh = new SimplicialMesh(points, elements);
-		this.vertices = mesh.getVertices();
-		buildComplex(mesh.getElements());
+		this(newBuilder(points, elements));
+	}
+
+	private static Builder newBuilder(double[][] points,
+			Collection<Simplex> elements) {
+		Builder builder = new Builder(points, elements.iterator().next()
+				.dimension() + 1, elements.size());
+		for (Simplex s : elements)
+			builder.add(s.toArray(), 0);
+		return builder;
+	}
+
+	/**
+	 * Build a complex from the elements collected by a builder
+	 */
+	private SimplicialComplex(Builder builder) {
+		this.embeddingDimension = builder.points[0].length;
+		this.vertices = builder.points;
+		this.executor = builder.executor;
+		SimplexTable s = new SimplexTable(builder.data, builder.size,
+				builder.stride);
+		int[] parity = builder.parity;
+		builder.data = null;
+		builder.parity = null;
+
+		// sort the elements lexicographically, moving them in place; the
+		// sort needs the permutation and a scratch array of the same length,
+		// released before the elements are moved
+		int[] order = SimplexSort.sortedOrder(s, executor);
+		int[] data = s.data();
+		int stride = s.stride();
+		int[] first = new int[stride];
+		for (int i = 0; i < order.length; i++) {
+			if (order[i] == i)
+				continue; // in place, or already moved
+			// follow the cycle of the permutation starting at i, turning its
+			// entries into fixed points as they are moved
+			System.arraycopy(data, i * stride, first, 0, stride);
+			int firstParity = parity[i];
+			int j = i;
+			while (order[j] != i) {
+				int next = order[j];
+				System.arraycopy(data, next * stride, data, j * stride, stride);
+				parity[j] = parity[next];
+				order[j] = j;
+				j = next;
+			}
+			System.arraycopy(first, 0, data, j * stride, stride);
+			parity[j] = firstParity;
+			order[j] = j;
+		}
+		initialize(s, parity);
+		if (!builder.lazy)
+			buildCochainComplex();
+	}
+
+	/**
+	 * Collects the elements of a complex one at a time, or in blocks, and
+	 * stores them directly in the table that the complex will use for its
+	 * top-level simplices. The vertices of each element are sorted as soon as
+	 * it is added, and the elements are sorted in place when the complex is
+	 * built, so that no other copy of the elements is needed: besides the
+	 * table and the parities, the build uses the sort permutation and, while
+	 * sorting, a scratch array of one int per element.
+	 * 
+	 */
+	public static class Builder {
+		private final double[][] points;
+		private final int stride;
+		private int[] data;
+		private int[] parity;
+		private int size;
+		private ExecutorService executor;
+		private boolean lazy;
+
+		/**
+		 * @param points
+		 *            the vertices of the complex
+		 * @param verticesPerElement
+		 *            the number of vertices of each element
+		 */
+		public Builder(double[][] points, int verticesPerElement) {
+			this(points, verticesPerElement, 16);
+		}
+
+		/**
+		 * @param points
+		 *            the vertices of the complex
+		 * @param verticesPerElement
+		 *            the number of vertices of each element
+		 * @param expectedElements
+		 *            the number of elements that will be added; if exact, the
+		 *            storage is never reallocated
+		 */
+		public Builder(double[][] points, int verticesPerElement,
+				int expectedElements) {
+			if (verticesPerElement < 1)
+				throw new IllegalArgumentException("Invalid element size "
+						+ verticesPerElement);
+			this.points = points;
+			this.stride = verticesPerElement;
+			this.data = new int[Math.max(expectedElements, 1) * stride];
+			this.parity = new int[Math.max(expectedElements, 1)];
+		}
+
+		/**
+		 * @param executor
+		 *            the executor used to build the complex, or null to build
+		 *            in the calling thread
+		 * @return this builder
+		 */
+		public Builder executor(ExecutorService executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * @param lazy
+		 *            whether to defer the construction of the lower dimensions
+		 *            (see {@link SimplicialComplex#buildSkeleton(int)})
+		 * @return this builder
+		 */
+		public Builder lazy(boolean lazy) {
+			this.lazy = lazy;
+			return this;
+		}
+
+		/**
+		 * @return the number of elements added so far
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Add an element, whose vertices are read from element[offset,
+		 * offset + verticesPerElement)
+		 * 
+		 * @param element
+		 * @param offset
+		 * @return this builder
+		 */
+		public Builder add(int[] element, int offset) {
+			ensureCapacity(size + 1);
+			System.arraycopy(element, offset, data, size * stride, stride);
+			store();
+			return this;
+		}
+
+		/**
+		 * Add a number of elements, stored consecutively in elements starting
+		 * at offset
+		 * 
+		 * @param elements
+		 * @param offset
+		 * @param count
+		 * @return this builder
+		 */
+		public Builder add(int[] elements, int offset, int count) {
+			ensureCapacity(size + count);
+			for (int i = 0; i < count; i++, offset += stride) {
+				System.arraycopy(elements, offset, data, size * stride, stride);
+				store();
+			}
+			return this;
+		}
+
+		/**
+		 * Add all the elements of an array
+		 * 
+		 * @param elements
+		 * @return this builder
+		 */
+		public Builder add(int[][] elements) {
+			ensureCapacity(size + elements.length);
+			for (int[] element : elements) {
+				if (element.length != stride)
+					throw new IllegalArgumentException("Invalid element");
+				add(element, 0);
+			}
+			return this;
+		}
+
+		/**
+		 * Add all the elements remaining in a buffer, which must contain a
+		 * multiple of verticesPerElement indices. The buffer position is
+		 * advanced to its limit.
+		 * 
+		 * @param elements
+		 * @return this builder
+		 */
+		public Builder add(IntBuffer elements) {
+			if (elements.remaining() % stride != 0)
+				throw new IllegalArgumentException(
+						"The buffer does not contain a whole number of elements");
+			int count = elements.remaining() / stride;
+			ensureCapacity(size + count);
+			for (int i = 0; i < count; i++) {
+				elements.get(data, size * stride, stride);
+				store();
+			}
+			return this;
+		}
+
+		public SimplicialComplex build() {
+			if (data == null)
+				throw new IllegalStateException("The builder has already been used");
+			if (size == 0)
+				throw new IllegalStateException("No elements");
+			return new SimplicialComplex(this);
+		}
+
+		/**
+		 * Validate and canonicalize the element copied at position size
+		 */
+		private void store() {
+			int offset = size * stride;
+			for (int i = offset; i < offset + stride; i++)
+				if (data[i] < 0 || data[i] >= points.length)
+					throw new IllegalArgumentException(
+							"Invalid index in elements: " + data[i]);
+			parity[size] = Parity.canonicalize(data, offset, stride);
+			for (int i = offset + 1; i < offset + stride; i++)
+				if (data[i - 1] == data[i])
+					throw new IllegalArgumentException(
+							"Repeated vertex in element: " + data[i]);
+			size++;
+		}
+
+		private void ensureCapacity(int elements) {
+			if (data == null)
+				throw new IllegalStateException("The builder has already been used");
+			if (elements <= parity.length)
+				return;
+			int capacity = Math.max(elements, parity.length
+					+ (parity.length >> 1));
+			data = Arrays.copyOf(data, capacity * stride);
+			parity = Arrays.copyOf(parity, capacity);
+		}
+	}
+
+	/**
+	 * Index maps between the simplices of a complex and those of a complex
+	 * derived from it: the same complex after a call to
+	 * {@link SimplicialComplex#update(int[], int[][], double[][])}, or its
+	 * boundary (see {@link SimplicialComplex#extractBoundary()}) or one of its
+	 * components (see {@link SimplicialComplex#extractComponents()}). The maps
+	 * are available for each dimension of the derived complex that was built
+	 * in the original one.
+	 * 
+	 */
+	public static class Remap {
+		private final SimplicialComplex complex;
+		private final int[][] oldToNew;
+		private final int[][] newToOld;
+		// orientation of the new simplices w.r.t. the old ones (null if the
+		// same)
+		private final int[][] relativeParity;
+		// number of simplices of each dimension of the original complex, when
+		// oldToNew is built on first use from newToOld
+		private int[] originalSize;
+
+		Remap(SimplicialComplex complex, int nDimensions) {
+			this.complex = complex;
+			this.oldToNew = new int[nDimensions][];
+			this.newToOld = new int[nDimensions][];
+			this.relativeParity = new int[nDimensions][];
+		}
+
+		/**
+		 * @return the derived complex
+		 */
+		public SimplicialComplex complex() {
+			return complex;
+		}
+
+		/**
+		 * @param p
+		 * @return the new index of each p-simplex of the original complex, or
+		 *         -1 if it is not in the derived complex; null if the
+		 *         dimension was not built
+		 */
+		public synchronized int[] oldToNew(int p) {
+			if (oldToNew[p] == null && originalSize != null
+					&& newToOld[p] != null) {
+				int[] map = new int[originalSize[p]];
+				Arrays.fill(map, -1);
+				for (int i = 0; i < newToOld[p].length; i++)
+					map[newToOld[p][i]] = i;
+				oldToNew[p] = map;
+			}
+			return oldToNew[p];
+		}
+
+		/**
+		 * @param p
+		 * @return the index in the original complex of each p-simplex of the
+		 *         derived complex, or -1 if it is a new simplex; null if the
+		 *         dimension was not built
+		 */
+		public int[] newToOld(int p) {
+			return newToOld[p];
+		}
+
+		/**
+		 * Transfer a cochain of the original complex to the derived complex.
+		 * Values on the simplices which are kept are copied (with their sign
+		 * changed if the orientation of the simplex changed), values on new
+		 * simplices are zero. For the boundary of a complex, this is the
+		 * trace of a primal cochain.
+		 * 
+		 * @param cochain
+		 * @return a new cochain of the same dimension
+		 */
+		public Cochain transfer(Cochain cochain) {
+			int p = cochain.indexDimension();
+			if (p >= newToOld.length || newToOld[p] == null
+					|| cochain.indexDimension(complex) != p)
+				throw new IllegalArgumentException(
+						"The cochain cannot be transferred to the derived complex");
+			return cochain.remap(complex, newToOld[p], relativeParity[p]);
+		}
 	}
 
 	public int numberOfNSimplices(int n) {
-		return subspaces[n].simplices.length;
+		return subspaces[n].size();
 	}
 
 	Subspace getSubspace(int n) {
@@ -219,102 +903,1281 @@ public class SimplicialComplex {
 	@Override
 	public String toString() {
 		String output = "simplicial complex\n  complex:\n";
-		for (int i = this.simplices.length - 1; i >= 0; i--) {
-			output += "   " + this.simplices[i].length + ": " + i
-					+ "d-simplices\n";
+		for (int i = complexDimension(); i >= 0; i--) {
+			SimplexTable s = subspaces[i].simplices;
+			output += "   " + (s == null ? "(not built)" : s.size()) + ": "
+					+ i + "d-simplices\n";
 		}
 		return output;
 	}
 
-	private void buildComplex(int[][] simplexArray) {
-		int n = simplexArray.length;
-		int k = simplexArray[0].length;
-		int[][] s = new int[n][k];
+	/**
+	 * Create the subspaces, given the top-level simplices (canonicalized and
+	 * sorted lexicographically) and their orientation
+	 */
+	private void initialize(SimplexTable s, int[] sortedParity) {
+		int n = s.stride();
+		subspaces = new Subspace[n];
 		for (int i = 0; i < n; i++)
-			System.arraycopy(simplexArray[i], 0, s[i], 0, k);
-		int[] parity = SimplexArray.simplexParity(s);
-		Arrays.sort(s, LexicographicalComparator.getComparator(k));
-		this.simplices = new int[n][][];
-		this.simplices[n - 1] = s;
-		this.chainComplex = new Matrix[n];
-		this.parities = new int[n][];
-		this.parities[n - 1] = parity;
-		int l;
-		while ((l = s[0].length - 1) >= 0) {
-			BoundaryOperator boundary = SimplexArray.simplexArrayBoundary(s,
-					parity);
-			s = boundary.uniqueFaces;
-			parity = new int[s.length];
-			simplices[l] = s;
-			chainComplex[l] = boundary.operator;
-			parities[l] = parity;
-		}
-		// zeroth boundary operator (= null operator)
-		chainComplex[0] = new CSRMatrix(1, s.length);
-
-		// build cochain complex (i.e., exterior derivative operators)
-		cochainComplex = new Matrix[n];
-		for (int i = 0; i < n - 1; i++)
-			cochainComplex[i] = chainComplex[i + 1].transpose();
-		// TODO: maybe use symbolic transpose ??
-
-		// nth exterior derivative operator (= null operator)
-		cochainComplex[n - 1] = cochainComplex[0];
+			subspaces[i] = new Subspace(i);
+		subspaces[n - 1].simplexParity = sortedParity;
+		subspaces[n - 1].simplices = s;
+		lowestDimension = n - 1;
+	}
 
-		subspaces = new Subspace[n];
+	/**
+	 * Build the simplices of all the dimensions down to p, together with the
+	 * boundary operators mapping each built dimension to the one below.
+	 * Dimensions which are already built are not rebuilt.
+	 * 
+	 * @param p
+	 */
+	public synchronized void buildSkeleton(int p) {
+		if (p < 0 || p > complexDimension())
+			throw new IllegalArgumentException("Invalid dimension " + p);
+		for (int l = lowestDimension; l > p; l--) {
+			Subspace sp = subspaces[l];
+			BoundaryOperator boundary = SimplexArray.simplexArrayBoundary(
+					sp.simplices, sp.simplexParity, executor);
+			subspaces[l - 1].simplexParity = new int[boundary.uniqueFaces
+					.size()];
+			subspaces[l - 1].simplices = boundary.uniqueFaces;
+			sp.boundary = boundary.operator;
+			lowestDimension = l - 1;
+		}
+	}
 
+	/**
+	 * Build the boundary operator of dimension p, assuming the simplices of
+	 * dimension p - 1 are built. Only the zeroth one (= null operator) is not
+	 * built together with the simplices.
+	 */
+	private synchronized Matrix buildBoundary(int p) {
+		Subspace sp = subspaces[p];
+		if (sp.boundary == null && p == 0)
+			sp.boundary = new CSRMatrix(1, sp.simplices.size());
+		return sp.boundary;
+	}
+
+	/**
+	 * Build the exterior derivative of dimension p, i.e., the transpose of
+	 * the boundary operator of dimension p + 1
+	 */
+	private Matrix buildD(int p) {
+		Matrix d;
+		if (p == complexDimension())
+			// nth exterior derivative operator (= null operator)
+			d = new CSRMatrix(1, subspaces[p].size());
+		else
+			// explicit transpose: d is applied far more often than the
+			// boundary, and a CSR product is faster than a transposed one
+			d = subspaces[p + 1].boundary().transpose();
+		synchronized (this) {
+			if (subspaces[p].d == null)
+				subspaces[p].d = d;
+			return subspaces[p].d;
+		}
+	}
+
+	/**
+	 * Build all the simplices, boundary operators and exterior derivatives
+	 */
+	private void buildCochainComplex() {
+		buildSkeleton(0);
+		int n = subspaces.length;
+		List<Callable<Matrix>> derivatives = new ArrayList<Callable<Matrix>>();
 		for (int i = 0; i < n; i++) {
-			subspaces[i] = new Subspace();
-			subspaces[i].dimension = i;
-			subspaces[i].d = cochainComplex[i];
-			subspaces[i].boundary = chainComplex[i];
-			subspaces[i].complex = this;
-			subspaces[i].simplices = simplices[i];
-			subspaces[i].nSimplices = subspaces[i].simplices.length;
-			subspaces[i].simplexParity = parities[i];
+			final Subspace sp = subspaces[i];
+			derivatives.add(new Callable<Matrix>() {
+				public Matrix call() {
+					return sp.d();
+				}
+			});
 		}
+		Parallel.invokeAll(executor, derivatives);
+	}
 
+	/**
+	 * Split this complex in balanced subdomains, see {@link Partition}
+	 * 
+	 * @param parts
+	 * @return
+	 */
+	public Partition partition(int parts) {
+		return new Partition(this, parts);
 	}
 
 	public int complexDimension() {
-		return simplices.length - 1;
+		return subspaces.length - 1;
 	}
 
 	public int embeddingDimension() {
-		return mesh.embeddingDimension();
+		return embeddingDimension;
+	}
+
+	public double[][] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * @return the coordinates of the vertices in a flat store, from which the
+	 *         geometry of the subspaces is computed; it is built on the first
+	 *         call, and dropped when the vertices change or the geometry of a
+	 *         subspace is reset
+	 */
+	public synchronized Coordinates getCoordinates() {
+		if (coordinates == null)
+			coordinates = Coordinates.of(vertices);
+		return coordinates;
+	}
+
+	/**
+	 * @return the executor used to build the complex, or null
+	 */
+	ExecutorService executor() {
+		return executor;
 	}
 
 	public Matrix[] chainComplex() {
+		Matrix[] chainComplex = new Matrix[subspaces.length];
+		for (int i = 0; i < subspaces.length; i++)
+			chainComplex[i] = subspaces[i].boundary();
 		return chainComplex;
 	}
 
 	public Matrix[] cochainComplex() {
+		Matrix[] cochainComplex = new Matrix[subspaces.length];
+		for (int i = 0; i < subspaces.length; i++)
+			cochainComplex[i] = subspaces[i].d();
 		return cochainComplex;
 	}
 
-	public int[][][] complex() {
+	public SimplexTable[] complex() {
+		SimplexTable[] simplices = new SimplexTable[subspaces.length];
+		for (int i = 0; i < subspaces.length; i++)
+			simplices[i] = subspaces[i].simplices();
 		return simplices;
 	}
 
+	/**
+	 * The star of the vertices in dimension p. The sources of the incidence
+	 * are the 0-simplices of the complex (i.e., the indices of the vertices
+	 * in the 0-dimensional simplex table, not in the array of points), and
+	 * the targets of each vertex are the p-simplices containing it, in
+	 * increasing order. Queries are answered in O(degree), without
+	 * allocation.
+	 * 
+	 * @param p
+	 * @return
+	 */
+	public Incidence vertexStar(int p) {
+		if (p < 0 || p > complexDimension())
+			throw new IllegalArgumentException("Invalid dimension " + p);
+		Subspace sp = subspaces[p];
+		Incidence star = sp.vertexStar;
+		if (star == null) {
+			buildVertexIncidence(p);
+			star = sp.vertexStar;
+		}
+		return star;
+	}
+
+	/**
+	 * The link of the vertices in dimension p, for p &lt; complexDimension():
+	 * the targets of each vertex are the p-simplices opposite to the vertex
+	 * in the (p+1)-simplices of its star. The incidence is aligned with
+	 * vertexStar(p + 1): the k-th p-simplex of the link of a vertex is
+	 * opposite to it in the k-th (p+1)-simplex of its star.
+	 * 
+	 * @param p
+	 * @return
+	 */
+	public Incidence vertexLink(int p) {
+		if (p < 0 || p >= complexDimension())
+			throw new IllegalArgumentException("Invalid dimension " + p);
+		Subspace sp = subspaces[p];
+		vertexStar(p + 1);
+		synchronized (this) {
+			if (sp.vertexLink == null) {
+				Incidence star = subspaces[p + 1].vertexStar;
+				SimplexTable cofaces = subspaces[p + 1].simplices();
+				SimplexTable faces = sp.simplices();
+				SimplexTable vertexTable = subspaces[0].simplices();
+				int[] targets = new int[star.targets().length];
+				int[] face = new int[p + 1];
+				for (int v = 0; v < star.size(); v++) {
+					int vertex = vertexTable.get(v, 0);
+					for (int k = star.start(v); k < star.end(v); k++) {
+						int s = star.targets()[k];
+						for (int c = 0, q = 0; c <= p + 1; c++)
+							if (cofaces.get(s, c) != vertex)
+								face[q++] = cofaces.get(s, c);
+						targets[k] = faces.binarySearch(face, 0);
+					}
+				}
+				sp.vertexLink = new Incidence(star.offsets(), targets);
+			}
+			return sp.vertexLink;
+		}
+	}
+
+	/**
+	 * Build the star of the vertices in dimension p with a counting sort of
+	 * the entries of the p-simplex table
+	 */
+	private synchronized void buildVertexIncidence(int p) {
+		Subspace sp = subspaces[p];
+		if (sp.vertexStar != null)
+			return;
+		SimplexTable vertexTable = subspaces[0].simplices();
+		SimplexTable simplices = sp.simplices();
+		// position of each point in the table of 0-simplices
+		int[] vertexIndex = new int[vertices.length];
+		for (int v = 0; v < vertexTable.size(); v++)
+			vertexIndex[vertexTable.get(v, 0)] = v;
+		int nVertices = vertexTable.size();
+		int[] offsets = new int[nVertices + 1];
+		for (int s = 0; s < simplices.size(); s++)
+			for (int c = 0; c <= p; c++)
+				offsets[vertexIndex[simplices.get(s, c)] + 1]++;
+		for (int v = 0; v < nVertices; v++)
+			offsets[v + 1] += offsets[v];
+		int[] next = Arrays.copyOf(offsets, nVertices);
+		int[] targets = new int[offsets[nVertices]];
+		for (int s = 0; s < simplices.size(); s++)
+			for (int c = 0; c <= p; c++)
+				targets[next[vertexIndex[simplices.get(s, c)]]++] = s;
+		sp.vertexStar = new Incidence(offsets, targets);
+	}
+
 	public Cochain getCochain(int dimension, boolean isPrimal) {
 		if (dimension < 0 || dimension > complexDimension())
 			throw new IllegalArgumentException("Invalid dimension " + dimension);
 		return new Cochain(this, dimension, isPrimal);
 	}
 
+	/**
+	 * @return the indices of the (n-1)-simplices on the boundary of the
+	 *         complex, i.e., those which are faces of a single n-simplex, in
+	 *         increasing order
+	 */
+	public int[] boundaryFaces() {
+		int n = complexDimension();
+		if (n == 0)
+			return new int[0];
+		// the rows of the top boundary operator are the faces, and their
+		// length is the number of cofaces
+		Incidence cofaces = cofaces(n);
+		int count = 0;
+		for (int f = 0; f < cofaces.size(); f++)
+			if (cofaces.degree(f) == 1)
+				count++;
+		int[] faces = new int[count];
+		for (int f = 0, k = 0; f < cofaces.size(); f++)
+			if (cofaces.degree(f) == 1)
+				faces[k++] = f;
+		return faces;
+	}
+
+	/**
+	 * Orientation of boundary faces in the boundary of their n-simplex: the
+	 * face without the i-th vertex of a simplex has the parity of the simplex
+	 * plus i, as in the boundary operator
+	 * 
+	 * @param faces
+	 *            (n-1)-simplices with a single coface
+	 * @return 1 for each face whose orientation is reversed w.r.t. its sorted
+	 *         version
+	 */
+	private int[] boundaryParity(int[] faces) {
+		int n = complexDimension();
+		Incidence cofaces = cofaces(n);
+		SimplexTable top = subspaces[n].simplices();
+		SimplexTable faceTable = subspaces[n - 1].simplices();
+		int[] topParity = subspaces[n].parity();
+		int[] parity = new int[faces.length];
+		for (int k = 0; k < faces.length; k++) {
+			int f = faces[k];
+			int s = cofaces.targets()[cofaces.start(f)];
+			// position of the vertex of s missing from f (both are sorted)
+			int i = 0;
+			while (i < n && top.get(s, i) == faceTable.get(f, i))
+				i++;
+			parity[k] = (topParity[s] + i) & 1;
+		}
+		return parity;
+	}
+
+	/**
+	 * @return the boundary faces, oriented as in the boundary of the
+	 *         n-simplex they belong to
+	 */
 	public Set<Simplex> boundarySimplices() {
 		ObjectSet<Simplex> boundarySimplices = new ObjectOpenHashSet<Simplex>();
-		for (Simplex s : subspaces[complexDimension()].simplexToIndex.keySet())
-			for (Simplex f : s.boundary())
-				if (!boundarySimplices.contains(f))
-					boundarySimplices.add(f);
-				else
-					boundarySimplices.remove(f);
+		if (complexDimension() == 0)
+			return boundarySimplices;
+		SimplexTable faces = subspaces[complexDimension() - 1].simplices();
+		int[] selected = boundaryFaces();
+		int[] parity = boundaryParity(selected);
+		for (int k = 0; k < selected.length; k++)
+			boundarySimplices.add(new Simplex(faces.row(selected[k]),
+					parity[k]));
 		return boundarySimplices;
-
 	}
 
 	public SimplicialComplex boundary() {
-		return new SimplicialComplex(vertices, boundarySimplices());
+		return extractBoundary().complex();
+	}
+
+	/**
+	 * Build the boundary of this complex by selecting its simplices in the
+	 * tables of this complex: the (n-1)-simplices on the boundary, oriented
+	 * as in the boundary of their n-simplex, and all their faces. The
+	 * boundary operators are restrictions of those of this complex, and
+	 * cached circumcenters and primal volumes are copied. The result is the
+	 * same as building a new complex from the boundary simplices.
+	 * 
+	 * @return the index maps between this complex and its boundary, whose
+	 *         complex() is the boundary
+	 */
+	public synchronized Remap extractBoundary() {
+		int n = complexDimension();
+		if (n == 0)
+			throw new IllegalArgumentException(
+					"A 0-dimensional complex has no boundary");
+		buildSkeleton(0);
+		int[] selected = boundaryFaces();
+		int[] parity = boundaryParity(selected);
+		return extract(n - 1, selected, parity, newIndex(n - 1));
+	}
+
+	/**
+	 * Label the p-simplices by connected component. The n-simplices are
+	 * connected if they share an (n-1)-face, and are labeled in parallel with
+	 * a union-find over the rows of the top boundary operator; each
+	 * lower-dimensional simplex then belongs to the smallest component among
+	 * those of its cofaces (simplices where components touch are shared by
+	 * them, see {@link #extractComponents()}).
+	 * 
+	 * @param p
+	 * @return
+	 */
+	public Components components(int p) {
+		int n = complexDimension();
+		if (p < 0 || p > n)
+			throw new IllegalArgumentException("Invalid dimension " + p);
+		buildSkeleton(p);
+		Components components;
+		if (n == 0)
+			// isolated vertices
+			components = Components.of(new Incidence(new int[1], new int[0]),
+					subspaces[0].size(), executor);
+		else
+			components = Components.of(cofaces(n), subspaces[n].size(),
+					executor);
+		for (int q = n - 1; q >= p; q--)
+			components = components.faces(cofaces(q + 1), executor);
+		return components;
+	}
+
+	/**
+	 * Extract a connected component (see {@link #components(int)}) as a
+	 * complex. To split a complex in all its components, use
+	 * {@link #extractComponents()}, which labels the complex only once.
+	 * 
+	 * @param component
+	 * @return the index maps between this complex and the component, whose
+	 *         complex() is the component
+	 */
+	public synchronized Remap extractComponent(int component) {
+		int n = complexDimension();
+		Components top = components(n);
+		if (component < 0 || component >= top.count())
+			throw new IllegalArgumentException("Invalid component "
+					+ component);
+		Incidence members = top.members();
+		return extract(n, Arrays.copyOfRange(members.targets(),
+				members.start(component), members.end(component)), null,
+				newIndex(n));
+	}
+
+	/**
+	 * Split this complex in its connected components. Each component is
+	 * built by selecting its n-simplices and all their faces in the tables of
+	 * this complex, as for the boundary: the operators are restrictions of
+	 * those of this complex, and cached circumcenters and primal volumes are
+	 * copied. Simplices where components touch (without sharing an
+	 * (n-1)-face) belong to all of them. The cost is linear in the total size
+	 * of the components.
+	 * 
+	 * @return the index maps between this complex and each component, in the
+	 *         order of the labels of {@link #components(int)}
+	 */
+	public synchronized Remap[] extractComponents() {
+		int n = complexDimension();
+		Components top = components(n);
+		Incidence members = top.members();
+		int[][] index = newIndex(n);
+		Remap[] components = new Remap[top.count()];
+		for (int c = 0; c < components.length; c++)
+			components[c] = extract(n, Arrays.copyOfRange(members.targets(),
+					members.start(c), members.end(c)), null, index);
+		return components;
+	}
+
+	/**
+	 * Build a subcomplex from a selection of its top simplices and the
+	 * closure downwards: the faces of each selected p-simplex are the columns
+	 * of its row in the exterior derivative d[p-1].
+	 * 
+	 * @param top
+	 *            the dimension of the selected simplices
+	 * @param selected
+	 *            the selected simplices, in increasing order
+	 * @param parity
+	 *            1 for each selected simplex whose orientation is reversed in
+	 *            the subcomplex, or null
+	 * @param index
+	 *            scratch arrays of one entry per simplex for the dimensions up
+	 *            to top, filled with -1 (and left so)
+	 * @return
+	 */
+	Remap extract(int top, int[] selected, int[] parity, int[][] index) {
+		SimplicialComplex sub = new SimplicialComplex(vertices,
+				embeddingDimension, top + 1, executor);
+		// the vertices are shared, and so is their flat copy if any
+		sub.coordinates = coordinates;
+		Remap remap = new Remap(sub, top + 1);
+		remap.originalSize = new int[top + 1];
+		for (int p = 0; p <= top; p++)
+			remap.originalSize[p] = subspaces[p].size();
+		remap.relativeParity[top] = parity;
+		remap.newToOld[top] = selected;
+		for (int p = top; p > 0; p--) {
+			CompressedRows d = compressedRows(subspaces[p - 1].d());
+			int[] mark = index[p - 1];
+			int[] faces = new int[remap.newToOld[p].length * (p + 1)];
+			int count = 0;
+			for (int s : remap.newToOld[p])
+				for (int k = d.rowPointer(s); k < d.rowPointer(s + 1); k++) {
+					int f = d.columnIndex(k);
+					if (mark[f] < 0) {
+						mark[f] = count;
+						faces[count++] = f;
+					}
+				}
+			faces = Arrays.copyOf(faces, count);
+			Arrays.sort(faces);
+			for (int f : faces)
+				mark[f] = -1;
+			remap.newToOld[p - 1] = faces;
+		}
+
+		for (int p = top; p >= 0; p--) {
+			Subspace sp = subspaces[p];
+			Subspace ssp = sub.subspaces[p];
+			int[] newToOld = remap.newToOld[p];
+			ssp.simplices = sp.simplices().select(newToOld);
+			ssp.simplexParity = new int[newToOld.length];
+			if (p == top && sp.simplexParity != null)
+				for (int i = 0; i < newToOld.length; i++)
+					ssp.simplexParity[i] = sp.simplexParity[newToOld[i]]
+							^ (parity == null ? 0 : parity[i]);
+			if (p > 0) {
+				int[] columnIndex = index[p];
+				for (int i = 0; i < newToOld.length; i++)
+					columnIndex[newToOld[i]] = i;
+				ssp.boundary = restrictOperator(compressedRows(sp.boundary()),
+						remap.newToOld[p - 1], columnIndex, newToOld.length,
+						p == top ? parity : null);
+				for (int i = 0; i < newToOld.length; i++)
+					columnIndex[newToOld[i]] = -1;
+			}
+			if (sp.circumcenter != null) {
+				ssp.circumcenter = new double[newToOld.length][];
+				for (int i = 0; i < newToOld.length; i++)
+					ssp.circumcenter[i] = sp.circumcenter[newToOld[i]];
+			}
+			if (sp.primalVolume != null) {
+				ssp.primalVolume = new double[newToOld.length];
+				for (int i = 0; i < newToOld.length; i++)
+					ssp.primalVolume[i] = sp.primalVolume[newToOld[i]];
+			}
+		}
+		return remap;
+	}
+
+	/**
+	 * @return scratch arrays for extract(), for the dimensions up to top
+	 */
+	int[][] newIndex(int top) {
+		int[][] index = new int[top + 1][];
+		for (int p = 0; p <= top; p++) {
+			index[p] = new int[subspaces[p].size()];
+			Arrays.fill(index[p], -1);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the (p-1)-faces to p-simplices incidence given by the rows of
+	 *         the boundary operator of dimension p, sharing its arrays (copied
+	 *         in the heap if the operator is mapped)
+	 */
+	Incidence cofaces(int p) {
+		Matrix operator = subspaces[p].boundary();
+		if (operator instanceof CSRMatrix) {
+			CSRMatrix boundary = (CSRMatrix) operator;
+			return new Incidence(boundary.getRowPointers(),
+					boundary.getColumnIndices());
+		}
+		CompressedRows boundary = compressedRows(operator);
+		int[] start = new int[boundary.numRows() + 1];
+		for (int f = 0; f <= boundary.numRows(); f++)
+			start[f] = boundary.rowPointer(f);
+		int[] targets = new int[start[boundary.numRows()]];
+		for (int k = 0; k < targets.length; k++)
+			targets[k] = boundary.columnIndex(k);
+		return new Incidence(start, targets);
+	}
+
+	/**
+	 * @return the operator of a subspace, in the heap or mapped, as
+	 *         compressed rows
+	 */
+	static CompressedRows compressedRows(Matrix operator) {
+		if (!(operator instanceof CompressedRows))
+			throw new UnsupportedOperationException(
+					"Not a compressed row operator: " + operator.getClass());
+		return (CompressedRows) operator;
+	}
+
+	/**
+	 * Restrict an operator to a subset of its rows and columns; the order of
+	 * the entries in each row is kept
+	 * 
+	 * @param rows
+	 *            the rows to keep, in order
+	 * @param columnIndex
+	 *            the new index of each column, or -1 to drop it
+	 * @param nColumns
+	 *            the number of columns kept
+	 * @param columnParity
+	 *            1 for each (new) column whose sign is changed, or null
+	 */
+	private static CSRMatrix restrictOperator(CompressedRows m, int[] rows,
+			int[] columnIndex, int nColumns, int[] columnParity) {
+		int[] newRowPtrs = new int[rows.length + 1];
+		int nnz = 0;
+		for (int r = 0; r < rows.length; r++) {
+			for (int k = m.rowPointer(rows[r]); k < m.rowPointer(rows[r] + 1); k++)
+				if (columnIndex[m.columnIndex(k)] >= 0)
+					nnz++;
+			newRowPtrs[r + 1] = nnz;
+		}
+		int[] newColumns = new int[nnz];
+		double[] newValues = new double[nnz];
+		for (int r = 0, q = 0; r < rows.length; r++)
+			for (int k = m.rowPointer(rows[r]); k < m.rowPointer(rows[r] + 1); k++) {
+				int c = columnIndex[m.columnIndex(k)];
+				if (c < 0)
+					continue;
+				double value = m.value(k);
+				newColumns[q] = c;
+				newValues[q++] = columnParity != null && columnParity[c] != 0 ? -value
+						: value;
+			}
+		return new CSRMatrix(rows.length, nColumns, newValues, newColumns,
+				newRowPtrs);
+	}
+
+	/**
+	 * Remove and insert top-level simplices, see
+	 * {@link #update(int[], int[][], double[][])}.
+	 * 
+	 * @param removedElements
+	 * @param insertedElements
+	 * @return
+	 */
+	public Remap update(int[] removedElements, int[][] insertedElements) {
+		return update(removedElements, insertedElements, new double[0][]);
+	}
+
+	/**
+	 * Remove and insert top-level simplices in place, e.g., after a local
+	 * remeshing step. Only the simplices around the modified elements are
+	 * computed: the simplex tables, boundary operators, exterior derivatives
+	 * and cached geometry of every built dimension are patched by a linear
+	 * merge of the existing data with the new simplices, which yields the
+	 * same tables and operators as a complete rebuild. Lower-dimensional
+	 * simplices are removed when no remaining element contains them.
+	 * 
+	 * Simplices are renumbered by the update, so existing cochains must be
+	 * carried over with {@link Remap#transfer(Cochain)}.
+	 * 
+	 * @param removedElements
+	 *            the indices of the top-level simplices to remove
+	 * @param insertedElements
+	 *            the vertices of the top-level simplices to insert, whose
+	 *            orientation is given by the order of the vertices
+	 * @param addedPoints
+	 *            points appended to the vertices of the complex, which can be
+	 *            used by the inserted elements
+	 * @return the index maps between the old and new simplices
+	 */
+	public synchronized Remap update(int[] removedElements,
+			int[][] insertedElements, double[][] addedPoints) {
+		if (mapped)
+			throw new UnsupportedOperationException(
+					"A mapped complex is read-only");
+		int n = complexDimension();
+		double[][] points = vertices;
+		if (addedPoints.length > 0) {
+			points = Arrays.copyOf(vertices, vertices.length
+					+ addedPoints.length);
+			for (int i = 0; i < addedPoints.length; i++) {
+				if (addedPoints[i].length != embeddingDimension)
+					throw new IllegalArgumentException("Invalid point " + i);
+				points[vertices.length + i] = addedPoints[i].clone();
+			}
+		}
+
+		// canonicalize and sort the inserted elements
+		Builder builder = new Builder(points, n + 1, insertedElements.length)
+				.add(insertedElements);
+		SimplexTable unsorted = new SimplexTable(builder.data, builder.size,
+				n + 1);
+		int[] order = SimplexSort.sortedOrder(unsorted);
+		SimplexTable[] added = new SimplexTable[n + 1];
+		added[n] = unsorted.select(order);
+		int[] addedParity = new int[order.length];
+		for (int i = 0; i < order.length; i++)
+			addedParity[i] = builder.parity[order[i]];
+
+		SimplexTable[] old = new SimplexTable[n + 1];
+		boolean[][] removed = new boolean[n + 1][];
+		old[n] = subspaces[n].simplices;
+		removed[n] = new boolean[old[n].size()];
+		for (int e : removedElements) {
+			if (e < 0 || e >= old[n].size())
+				throw new IllegalArgumentException("Invalid element index " + e);
+			removed[n][e] = true;
+		}
+		for (int i = 0; i < added[n].size(); i++) {
+			if (i > 0 && added[n].compareRows(i - 1, i) == 0)
+				throw new IllegalArgumentException("Element inserted twice");
+			int index = old[n].binarySearch(added[n].data(), added[n]
+					.offset(i));
+			if (index >= 0 && !removed[n][index])
+				throw new IllegalArgumentException(
+						"Element already in the complex");
+		}
+
+		// find the faces which are removed and those which are new
+		for (int p = n - 1; p >= lowestDimension; p--) {
+			old[p] = subspaces[p].simplices;
+			removed[p] = findRemovedFaces(old[p + 1], removed[p + 1],
+					(CSRMatrix) subspaces[p + 1].boundary, old[p]);
+			added[p] = findAddedFaces(added[p + 1], old[p], removed[p]);
+		}
+
+		// remove the contributions of the removed elements to dual volumes
+		Subspace top = subspaces[n];
+		boolean dualVolumes = true;
+		for (Subspace sp : subspaces)
+			dualVolumes &= sp.dualVolume != null;
+		if (!dualVolumes)
+			// partially reset, recomputed on demand
+			for (Subspace sp : subspaces)
+				sp.dualVolume = null;
+		else {
+			double[][] centers = new double[n + 1][];
+			int[][] faces = new int[n + 1][];
+			int[] position = new int[n + 1];
+			Workspace workspace = new Workspace(n + 1);
+			for (int i = 0; i < removed[n].length; i++)
+				if (removed[n][i])
+					top.addDualVolumes(i, -1, centers, faces, position,
+							workspace);
+		}
+
+		vertices = points;
+		coordinates = null;
+		Remap remap = new Remap(this, n + 1);
+		int[][] addedIndex = new int[n + 1][];
+		for (int p = n; p >= lowestDimension; p--) {
+			Subspace sp = subspaces[p];
+			addedIndex[p] = new int[added[p].size()];
+			SimplexTable merged = mergeTables(old[p], removed[p], added[p],
+					remap, addedIndex[p], p);
+			int[] newToOld = remap.newToOld[p];
+			int[] parity = new int[merged.size()];
+			if (p == n)
+				for (int i = 0, j = 0; i < parity.length; i++)
+					parity[i] = newToOld[i] >= 0 ? sp.simplexParity[newToOld[i]]
+							: addedParity[j++];
+			sp.simplexParity = parity;
+			sp.simplices = merged;
+			if (sp.circumcenter != null) {
+				double[][] circumcenter = new double[merged.size()][];
+				for (int i = 0; i < circumcenter.length; i++)
+					circumcenter[i] = newToOld[i] >= 0 ? sp.circumcenter[newToOld[i]]
+							: sp.computeCircumcenter(merged.row(i));
+				sp.circumcenter = circumcenter;
+			}
+			if (sp.primalVolume != null) {
+				double[] primalVolume = new double[merged.size()];
+				for (int i = 0; i < primalVolume.length; i++)
+					primalVolume[i] = newToOld[i] >= 0 ? sp.primalVolume[newToOld[i]]
+							: sp.computePrimalVolume(merged.row(i), null);
+				sp.primalVolume = primalVolume;
+			}
+			if (sp.dualVolume != null) {
+				double[] dualVolume = new double[merged.size()];
+				for (int i = 0; i < dualVolume.length; i++)
+					if (newToOld[i] >= 0)
+						dualVolume[i] = sp.dualVolume[newToOld[i]];
+				sp.dualVolume = dualVolume;
+			}
+			sp.star = null;
+			sp.starInv = null;
+			sp.vertexStar = null;
+			sp.vertexLink = null;
+		}
+
+		// patch the operators, now that all the tables are merged
+		for (int p = n; p >= lowestDimension; p--) {
+			Subspace sp = subspaces[p];
+			if (p > lowestDimension)
+				sp.boundary = patchBoundary((CSRMatrix) sp.boundary, old[p],
+						old[p - 1], removed[p], added[p], addedIndex[p],
+						p == n ? addedParity : null, subspaces[p - 1].simplices,
+						remap.oldToNew[p], remap.newToOld[p - 1]);
+			else
+				// the boundary of the lowest dimension is built on demand
+				sp.boundary = null;
+			if (sp.d != null && p < n)
+				sp.d = patchD((CSRMatrix) sp.d, sp.simplices,
+						subspaces[p + 1].simplices, p + 1 == n ? subspaces[n]
+								.simplexParity : null, remap.newToOld[p + 1],
+						remap.oldToNew[p]);
+			else
+				sp.d = null;
+		}
+
+		// add the contributions of the inserted elements to dual volumes
+		if (dualVolumes) {
+			double[][] centers = new double[n + 1][];
+			int[][] faces = new int[n + 1][];
+			int[] position = new int[n + 1];
+			Workspace workspace = new Workspace(n + 1);
+			for (int i : addedIndex[n])
+				top.addDualVolumes(i, 1, centers, faces, position, workspace);
+		}
+		return remap;
+	}
+
+	/**
+	 * @return the faces (among the simplices of faces) of the removed simplices
+	 *         which do not belong to any remaining simplex
+	 */
+	private static boolean[] findRemovedFaces(SimplexTable simplices,
+			boolean[] removedSimplices, CSRMatrix boundary, SimplexTable faces) {
+		boolean[] removed = new boolean[faces.size()];
+		int[] rowPtrs = boundary.getRowPointers();
+		int[] columns = boundary.getColumnIndices();
+		int stride = faces.stride();
+		int[] face = new int[stride];
+		for (int s = 0; s < removedSimplices.length; s++) {
+			if (!removedSimplices[s])
+				continue;
+			for (int i = 0; i <= stride; i++) {
+				dropVertex(simplices, s, i, face, 0);
+				int f = faces.binarySearch(face, 0);
+				if (removed[f])
+					continue;
+				boolean orphan = true;
+				for (int k = rowPtrs[f]; k < rowPtrs[f + 1] && orphan; k++)
+					orphan = removedSimplices[columns[k]];
+				removed[f] = orphan;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @return the sorted faces of the given simplices which are not among the
+	 *         existing faces; existing faces flagged as removed are kept
+	 */
+	private static SimplexTable findAddedFaces(SimplexTable simplices,
+			SimplexTable faces, boolean[] removedFaces) {
+		int stride = faces.stride();
+		int[] buffer = new int[simplices.size() * (stride + 1) * stride];
+		int count = 0;
+		for (int s = 0; s < simplices.size(); s++)
+			for (int i = 0; i <= stride; i++) {
+				dropVertex(simplices, s, i, buffer, count * stride);
+				int f = faces.binarySearch(buffer, count * stride);
+				if (f >= 0)
+					removedFaces[f] = false;
+				else
+					count++;
+			}
+		SimplexTable candidates = new SimplexTable(buffer, count, stride);
+		int[] order = SimplexSort.sortedOrder(candidates);
+		int unique = 0;
+		for (int i = 0; i < order.length; i++)
+			if (i == 0 || candidates.compareRows(order[i - 1], order[i]) != 0)
+				order[unique++] = order[i];
+		return candidates.select(Arrays.copyOf(order, unique));
+	}
+
+	/**
+	 * Copy the vertices of a simplex, except the one at the given position,
+	 * into dst
+	 */
+	private static void dropVertex(SimplexTable simplices, int row,
+			int position, int[] dst, int offset) {
+		int[] data = simplices.data();
+		int from = simplices.offset(row);
+		for (int c = 0; c < simplices.stride(); c++)
+			if (c != position)
+				dst[offset++] = data[from + c];
+	}
+
+	/**
+	 * Merge the simplices of a table which are not removed with the sorted
+	 * added simplices, filling the index maps of the remap
+	 * 
+	 * @param addedIndex
+	 *            filled with the index of the added simplices in the result
+	 */
+	private static SimplexTable mergeTables(SimplexTable old,
+			boolean[] removed, SimplexTable added, Remap remap,
+			int[] addedIndex, int p) {
+		SimplexTable merged = new SimplexTable(old.size()
+				- countRemoved(removed) + added.size(), old.stride());
+		int[] oldToNew = new int[old.size()];
+		int[] newToOld = new int[merged.size()];
+		int i = 0;
+		int j = 0;
+		for (int k = 0; k < newToOld.length; k++) {
+			while (i < old.size() && removed[i])
+				oldToNew[i++] = -1;
+			if (j == added.size()
+					|| (i < old.size() && old.compareRow(i, added.data(),
+							added.offset(j)) < 0)) {
+				old.copyRow(i, merged.data(), merged.offset(k));
+				oldToNew[i] = k;
+				newToOld[k] = i++;
+			} else {
+				added.copyRow(j, merged.data(), merged.offset(k));
+				addedIndex[j++] = k;
+				newToOld[k] = -1;
+			}
+		}
+		while (i < old.size())
+			oldToNew[i++] = -1;
+		remap.oldToNew[p] = oldToNew;
+		remap.newToOld[p] = newToOld;
+		return merged;
+	}
+
+	/**
+	 * Patch the boundary operator of dimension p. Entries of the kept
+	 * simplices are copied, entries of the added simplices are inserted, and
+	 * each row keeps the order of
+	 * {@link SimplexArray#simplexArrayBoundary(SimplexTable, int[])}, i.e., by
+	 * position of the face in the simplex, then by simplex.
+	 * 
+	 * @param addedParity
+	 *            the orientation of the added simplices, or null if they are
+	 *            all sorted
+	 */
+	private static CSRMatrix patchBoundary(CSRMatrix boundary,
+			SimplexTable oldSimplices, SimplexTable oldFaces,
+			boolean[] removed, SimplexTable added, int[] addedIndex,
+			int[] addedParity, SimplexTable faces, int[] oldToNew,
+			int[] faceNewToOld) {
+		int stride = oldSimplices.stride();
+		int nFaces = faces.size();
+
+		// entries of the added simplices, grouped by row in order of face
+		// position and then simplex, by a stable counting sort
+		int nAdded = added.size() * stride;
+		int[] addedRow = new int[nAdded];
+		int[] face = new int[stride - 1];
+		for (int i = 0, e = 0; i < stride; i++)
+			for (int j = 0; j < added.size(); j++, e++) {
+				dropVertex(added, j, i, face, 0);
+				addedRow[e] = faces.binarySearch(face, 0);
+			}
+		int[] start = new int[nFaces + 1];
+		for (int e = 0; e < nAdded; e++)
+			start[addedRow[e] + 1]++;
+		for (int r = 0; r < nFaces; r++)
+			start[r + 1] += start[r];
+		int[] next = Arrays.copyOf(start, nFaces);
+		int[] addedEntries = new int[nAdded];
+		for (int e = 0; e < nAdded; e++)
+			addedEntries[next[addedRow[e]]++] = e;
+
+		int[] rowPtrs = boundary.getRowPointers();
+		int[] columns = boundary.getColumnIndices();
+		double[] values = boundary.getData();
+		int nnz = rowPtrs[rowPtrs.length - 1] + nAdded;
+		int[] newRowPtrs = new int[nFaces + 1];
+		int[] newColumns = new int[nnz];
+		double[] newValues = new double[nnz];
+		int q = 0;
+		for (int r = 0; r < nFaces; r++) {
+			int o = faceNewToOld[r];
+			int k = o < 0 ? 0 : rowPtrs[o];
+			int kEnd = o < 0 ? 0 : rowPtrs[o + 1];
+			int a = start[r];
+			while (k < kEnd || a < start[r + 1]) {
+				if (k < kEnd && removed[columns[k]]) {
+					k++;
+					continue;
+				}
+				boolean takeOld = a == start[r + 1];
+				if (!takeOld && k < kEnd) {
+					// compare (face position, new column) of both entries
+					int oldPosition = omittedVertex(oldSimplices, columns[k],
+							oldFaces, o);
+					int e = addedEntries[a];
+					int addedPosition = e / added.size();
+					takeOld = oldPosition < addedPosition
+							|| (oldPosition == addedPosition && oldToNew[columns[k]] < addedIndex[e
+									% added.size()]);
+				}
+				if (takeOld) {
+					newColumns[q] = oldToNew[columns[k]];
+					newValues[q++] = values[k++];
+				} else {
+					int e = addedEntries[a++];
+					int i = e / added.size();
+					int j = e % added.size();
+					int parity = addedParity == null ? 0 : addedParity[j];
+					newColumns[q] = addedIndex[j];
+					newValues[q++] = (parity + i) % 2 == 0 ? 1 : -1;
+				}
+			}
+			newRowPtrs[r + 1] = q;
+		}
+		return new CSRMatrix(nFaces, oldToNew.length - countRemoved(removed)
+				+ added.size(), Arrays.copyOf(newValues, q), Arrays.copyOf(
+				newColumns, q), newRowPtrs);
+	}
+
+	private static int countRemoved(boolean[] removed) {
+		int count = 0;
+		for (boolean r : removed)
+			if (r)
+				count++;
+		return count;
+	}
+
+	/**
+	 * @return the position in a simplex of the vertex which is not in a face
+	 */
+	private static int omittedVertex(SimplexTable simplices, int simplex,
+			SimplexTable faces, int face) {
+		int[] s = simplices.data();
+		int[] f = faces.data();
+		int sOffset = simplices.offset(simplex);
+		int fOffset = faces.offset(face);
+		int c = 0;
+		while (c < faces.stride() && s[sOffset + c] == f[fOffset + c])
+			c++;
+		return c;
+	}
+
+	/**
+	 * Patch the exterior derivative of dimension p, whose rows are the
+	 * (p+1)-simplices: rows of kept simplices are copied with their columns
+	 * renumbered, rows of added simplices are computed. Columns are sorted
+	 * in each row, as in the transpose of the boundary operator.
+	 * 
+	 * @param parity
+	 *            the orientation of the (p+1)-simplices, or null if they are
+	 *            all sorted
+	 */
+	private static CSRMatrix patchD(CSRMatrix d, SimplexTable faces,
+			SimplexTable simplices, int[] parity, int[] newToOld,
+			int[] faceOldToNew) {
+		int stride = simplices.stride();
+		int[] rowPtrs = d.getRowPointers();
+		int[] columns = d.getColumnIndices();
+		double[] values = d.getData();
+		int[] newRowPtrs = new int[simplices.size() + 1];
+		int nnz = 0;
+		for (int r = 0; r < simplices.size(); r++) {
+			int o = newToOld[r];
+			nnz += o >= 0 ? rowPtrs[o + 1] - rowPtrs[o] : stride;
+			newRowPtrs[r + 1] = nnz;
+		}
+		int[] newColumns = new int[nnz];
+		double[] newValues = new double[nnz];
+		int[] face = new int[stride - 1];
+		for (int r = 0, q = 0; r < simplices.size(); r++) {
+			int o = newToOld[r];
+			if (o >= 0) {
+				for (int k = rowPtrs[o]; k < rowPtrs[o + 1]; k++) {
+					newColumns[q] = faceOldToNew[columns[k]];
+					newValues[q++] = values[k];
+				}
+				continue;
+			}
+			int from = q;
+			for (int i = 0; i < stride; i++) {
+				dropVertex(simplices, r, i, face, 0);
+				int column = faces.binarySearch(face, 0);
+				double value = ((parity == null ? 0 : parity[r]) + i) % 2 == 0 ? 1
+						: -1;
+				// insert in column order
+				int k = q++;
+				while (k > from && newColumns[k - 1] > column) {
+					newColumns[k] = newColumns[k - 1];
+					newValues[k] = newValues[k - 1];
+					k--;
+				}
+				newColumns[k] = column;
+				newValues[k] = value;
+			}
+		}
+		return new CSRMatrix(simplices.size(), faces.size(), newValues,
+				newColumns, newRowPtrs);
+	}
+
+	/**
+	 * Save a binary snapshot of this complex: vertices, simplices, parities,
+	 * boundary operators, exterior derivatives and any geometric quantity
+	 * (circumcenters, primal and dual volumes) computed so far. Dimensions
+	 * not yet built in lazy mode are built first. Complexes opened with
+	 * {@link #map(File)} are already stored, and cannot be saved.
+	 * 
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		if (mapped)
+			throw new UnsupportedOperationException(
+					"A mapped complex cannot be saved again");
+		buildCochainComplex();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			ChannelIO.Writer out = new ChannelIO.Writer(raf.getChannel());
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeInt(vertices.length);
+			out.writeInt(embeddingDimension);
+			for (double[] vertex : vertices)
+				out.writeDoubles(vertex, 0, embeddingDimension);
+			out.writeInt(subspaces.length);
+			for (Subspace sp : subspaces) {
+				SimplexTable s = sp.simplices();
+				out.writeInt(s.size());
+				out.writeInt(s.stride());
+				out.writeInts(s.data(), 0, s.size() * s.stride());
+				out.writeInts(sp.parity(), 0, s.size());
+				writeCSR(out, (CSRMatrix) sp.boundary());
+				writeCSR(out, (CSRMatrix) sp.d());
+				int flags = (sp.circumcenter != null ? HAS_CIRCUMCENTERS : 0)
+						| (sp.primalVolume != null ? HAS_PRIMAL_VOLUMES : 0)
+						| (sp.dualVolume != null ? HAS_DUAL_VOLUMES : 0);
+				out.writeInt(flags);
+				if (sp.circumcenter != null) {
+					int width = sp.circumcenter.length == 0 ? 0
+							: sp.circumcenter[0].length;
+					out.writeInt(width);
+					for (double[] center : sp.circumcenter)
+						out.writeDoubles(center, 0, width);
+				}
+				if (sp.primalVolume != null)
+					out.writeDoubles(sp.primalVolume, 0, s.size());
+				if (sp.dualVolume != null)
+					out.writeDoubles(sp.dualVolume, 0, s.size());
+			}
+			out.flush();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Load a complex from a snapshot written by {@link #save(File)}. The file
+	 * is mapped in memory and its arrays are copied in bulk, so no
+	 * combinatorial or geometric computation is performed.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static SimplicialComplex load(File file) throws IOException {
+		return load(file, null);
+	}
+
+	/**
+	 * Load a complex from a snapshot written by {@link #save(File)}.
+	 * 
+	 * @param file
+	 * @param executor
+	 *            the executor used for further computations on the complex,
+	 *            or null to compute in the calling thread
+	 * @return
+	 * @throws IOException
+	 */
+	public static SimplicialComplex load(File file, ExecutorService executor)
+			throws IOException {
+		return read(file, executor, false);
+	}
+
+	/**
+	 * Open a snapshot written by {@link #save(File)} without loading it in
+	 * the heap. Simplex tables, operators and stored geometry stay in the
+	 * memory-mapped file and are paged in by the operating system as they are
+	 * traversed, so that complexes larger than the heap can be used; only the
+	 * vertices and the parities of the simplices are copied in the heap.
+	 * 
+	 * The complex is read-only: its tables and operators cannot be modified,
+	 * and it cannot be saved again. Geometric quantities missing from the
+	 * snapshot, or recomputed after {@link Subspace#resetGeometry()}, are
+	 * stored in the heap as usual. Extraction, partitioning and the other
+	 * queries read the mapped operators and tables directly, except the
+	 * following operations, which throw UnsupportedOperationException:
+	 * <ul>
+	 * <li>{@link #update(int[], int[][])} and {@link #save(File)};</li>
+	 * <li>{@link SimplexTable#data()} and {@link SimplexTable#set(int, int, int)}
+	 * on the simplex tables, and therefore
+	 * {@link SimplexArray#canonicalize(SimplexTable)}, which sorts a table in
+	 * place;</li>
+	 * <li>{@link Matrix#scale(double)} on the operators.</li>
+	 * </ul>
+	 * {@link SimplexArray#simplexArrayBoundary(SimplexTable, int[])} works on
+	 * a heap copy of a mapped table.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static SimplicialComplex map(File file) throws IOException {
+		return map(file, null);
+	}
+
+	/**
+	 * Open a snapshot without loading it in the heap, see {@link #map(File)}.
+	 * 
+	 * @param file
+	 * @param executor
+	 *            the executor used for further computations on the complex,
+	 *            or null to compute in the calling thread
+	 * @return
+	 * @throws IOException
+	 */
+	public static SimplicialComplex map(File file, ExecutorService executor)
+			throws IOException {
+		return read(file, executor, true);
+	}
+
+	private static SimplicialComplex read(File file, ExecutorService executor,
+			boolean map) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// mapped regions remain valid after the channel is closed
+			ChannelIO.Reader in = new ChannelIO.Reader(raf.getChannel(), 0);
+			if (in.readInt() != SNAPSHOT_MAGIC)
+				throw new IOException("Not a simplicial complex snapshot: "
+						+ file);
+			int version = in.readInt();
+			if (version != SNAPSHOT_VERSION)
+				throw new IOException("Unsupported snapshot version " + version);
+			int nVertices = in.readInt();
+			int embeddingDimension = in.readInt();
+			double[] coordinates = in.readDoubles(nVertices
+					* embeddingDimension);
+			double[][] vertices = new double[nVertices][];
+			for (int i = 0; i < nVertices; i++)
+				vertices[i] = Arrays.copyOfRange(coordinates, i
+						* embeddingDimension, (i + 1) * embeddingDimension);
+			SimplicialComplex complex = new SimplicialComplex(vertices,
+					embeddingDimension, in.readInt(), executor);
+			complex.mapped = map;
+			for (Subspace sp : complex.subspaces) {
+				int size = in.readInt();
+				int stride = in.readInt();
+				SimplexTable simplices = map ? new MappedSimplexTable(
+						in.mapInts(size * stride), size, stride)
+						: new SimplexTable(in.readInts(size * stride), size,
+								stride);
+				sp.simplexParity = in.readInts(size);
+				sp.simplices = simplices;
+				sp.boundary = map ? mapCSR(in) : readCSR(in);
+				sp.d = map ? mapCSR(in) : readCSR(in);
+				int flags = in.readInt();
+				if ((flags & HAS_CIRCUMCENTERS) != 0) {
+					int width = in.readInt();
+					if (map && width == embeddingDimension)
+						sp.mappedCircumcenter = in.mapDoubles(size * width);
+					else {
+						double[] centers = in.readDoubles(size * width);
+						sp.circumcenter = new double[size][];
+						for (int i = 0; i < size; i++)
+							sp.circumcenter[i] = Arrays.copyOfRange(centers, i
+									* width, (i + 1) * width);
+					}
+				}
+				if ((flags & HAS_PRIMAL_VOLUMES) != 0) {
+					if (map)
+						sp.mappedPrimalVolume = in.mapDoubles(size);
+					else
+						sp.primalVolume = in.readDoubles(size);
+				}
+				if ((flags & HAS_DUAL_VOLUMES) != 0) {
+					if (map)
+						sp.mappedDualVolume = in.mapDoubles(size);
+					else
+						sp.dualVolume = in.readDoubles(size);
+				}
+			}
+			return complex;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static void writeCSR(ChannelIO.Writer out, CSRMatrix m)
+			throws IOException {
+		int[] rowPtrs = m.getRowPointers();
+		int nnz = rowPtrs[m.numRows()];
+		out.writeInt(m.numRows());
+		out.writeInt(m.numColumns());
+		out.writeInt(nnz);
+		out.writeInts(rowPtrs, 0, m.numRows() + 1);
+		out.writeInts(m.getColumnIndices(), 0, nnz);
+		out.writeDoubles(m.getData(), 0, nnz);
+	}
+
+	private static CSRMatrix readCSR(ChannelIO.Reader in) throws IOException {
+		int numRows = in.readInt();
+		int numColumns = in.readInt();
+		int nnz = in.readInt();
+		int[] rowPtrs = in.readInts(numRows + 1);
+		int[] columnIndices = in.readInts(nnz);
+		double[] data = in.readDoubles(nnz);
+		return new CSRMatrix(numRows, numColumns, data, columnIndices, rowPtrs);
+	}
+
+	private static MappedCSRMatrix mapCSR(ChannelIO.Reader in)
+			throws IOException {
+		int numRows = in.readInt();
+		int numColumns = in.readInt();
+		int nnz = in.readInt();
+		MappedIntArray rowPtrs = in.mapInts(numRows + 1);
+		MappedIntArray columnIndices = in.mapInts(nnz);
+		MappedDoubleArray data = in.mapDoubles(nnz);
+		return new MappedCSRMatrix(numRows, numColumns, data, columnIndices,
+				rowPtrs);
 	}
 }
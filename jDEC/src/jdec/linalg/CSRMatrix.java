@@ -4,7 +4,7 @@ import no.uib.cipr.matrix.DenseVector;
 import no.uib.cipr.matrix.Matrix;
 import no.uib.cipr.matrix.Vector;
 
-public class CSRMatrix extends AbstractOperator {
+public class CSRMatrix extends AbstractOperator implements CompressedRows {
 
 	private final double[] a;
 	private final int[] ja;
@@ -31,6 +31,40 @@ public class CSRMatrix extends AbstractOperator {
 				new int[numRows + 1]);
 	}
 
+	/**
+	 * @return the non-zero values, row by row
+	 */
+	public double[] getData() {
+		return a;
+	}
+
+	/**
+	 * @return the column index of each non-zero value
+	 */
+	public int[] getColumnIndices() {
+		return ja;
+	}
+
+	/**
+	 * @return the position of the first non-zero value of each row, followed
+	 *         by the number of non-zero values
+	 */
+	public int[] getRowPointers() {
+		return ia;
+	}
+
+	public int rowPointer(int row) {
+		return ia[row];
+	}
+
+	public int columnIndex(int position) {
+		return ja[position];
+	}
+
+	public double value(int position) {
+		return a[position];
+	}
+
 	@Override
 	public Vector multAdd(double alpha, Vector x, Vector y) {
 		if (!(x instanceof DenseVector) || !(y instanceof DenseVector))
@@ -83,12 +117,11 @@ public class CSRMatrix extends AbstractOperator {
 			count[ja[i]]++;
 
 		// fill the transpose matrix's row pointers
-		for (int i = 1; i < numColumns; i++) {
-			iaT[i] = iaT[i - 1] + count[i];
+		for (int i = 0; i < numColumns; i++) {
+			iaT[i + 1] = iaT[i] + count[i];
 			// count[i] will be useful in next section
 			count[i] = iaT[i];
 		}
-		iaT[numColumns] = a.length;
 
 		// now fill data and
 		int q;
@@ -0,0 +1,31 @@
+package jdec.linalg;
+
+/**
+ * Entry-wise read access to a matrix stored in compressed sparse row format,
+ * whether its arrays are in the heap ({@link CSRMatrix}) or in a mapped file
+ * ({@link MappedCSRMatrix}). The non-zero values of row i are at the
+ * positions [rowPointer(i), rowPointer(i + 1)).
+ *
+ */
+public interface CompressedRows {
+
+	int numRows();
+
+	int numColumns();
+
+	/**
+	 * @return the position of the first non-zero value of the row, or the
+	 *         number of non-zero values if row == numRows()
+	 */
+	int rowPointer(int row);
+
+	/**
+	 * @return the column index of the non-zero value at the given position
+	 */
+	int columnIndex(int position);
+
+	/**
+	 * @return the non-zero value at the given position
+	 */
+	double value(int position);
+}
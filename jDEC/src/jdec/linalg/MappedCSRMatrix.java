@@ -0,0 +1,134 @@
+package jdec.linalg;
+
+import jdec.util.MappedDoubleArray;
+import jdec.util.MappedIntArray;
+import no.uib.cipr.matrix.DenseVector;
+import no.uib.cipr.matrix.Matrix;
+import no.uib.cipr.matrix.Vector;
+
+/**
+ * A read-only CSR matrix whose arrays live in a memory-mapped file rather
+ * than in the heap. Products stream over the rows in order, so the operating
+ * system only needs to keep the pages of the rows being processed in memory.
+ *
+ */
+public class MappedCSRMatrix extends AbstractOperator implements
+		CompressedRows {
+
+	private final MappedDoubleArray a;
+	private final MappedIntArray ja;
+	private final MappedIntArray ia;
+
+	public MappedCSRMatrix(int numRows, int numColumns, MappedDoubleArray data,
+			MappedIntArray columnIndex, MappedIntArray rowPtr) {
+		super(numRows, numColumns);
+		this.a = data;
+		this.ja = columnIndex;
+		this.ia = rowPtr;
+		assert a.length() == ja.length();
+		assert ia.length() == numRows + 1;
+	}
+
+	public int rowPointer(int row) {
+		return ia.get(row);
+	}
+
+	public int columnIndex(int position) {
+		return ja.get(position);
+	}
+
+	public double value(int position) {
+		return a.get(position);
+	}
+
+	@Override
+	public Vector multAdd(double alpha, Vector x, Vector y) {
+		if (!(x instanceof DenseVector) || !(y instanceof DenseVector))
+			throw new UnsupportedOperationException();
+		double[] xd = ((DenseVector) x).getData();
+		double[] yd = ((DenseVector) y).getData();
+		double scal;
+		int rowEnd = ia.get(0);
+		for (int i = 0; i < numRows; i++) {
+			int rowStart = rowEnd;
+			rowEnd = ia.get(i + 1);
+			scal = 0;
+			for (int j = rowStart; j < rowEnd; j++)
+				scal += xd[ja.get(j)] * a.get(j);
+			yd[i] += alpha * scal;
+		}
+		return y;
+	}
+
+	@Override
+	public Vector transMultAdd(double alpha, Vector x, Vector y) {
+		if (!(x instanceof DenseVector) || !(y instanceof DenseVector))
+			throw new UnsupportedOperationException();
+		double[] xd = ((DenseVector) x).getData();
+		double[] yd = ((DenseVector) y).getData();
+		int rowEnd = ia.get(0);
+		for (int i = 0; i < numRows; i++) {
+			int rowStart = rowEnd;
+			rowEnd = ia.get(i + 1);
+			double xi = alpha * xd[i];
+			for (int j = rowStart; j < rowEnd; j++)
+				yd[ja.get(j)] += xi * a.get(j);
+		}
+		return y;
+	}
+
+	@Override
+	public Matrix scale(double alpha) {
+		throw new UnsupportedOperationException("A mapped matrix is read-only");
+	}
+
+	/**
+	 * Returns a Matrix acting as the transpose of this matrix, without copying
+	 * the mapped arrays
+	 */
+	@Override
+	public Matrix transpose() {
+		return new AbstractOperator(numColumns, numRows) {
+			@Override
+			public Vector multAdd(double alpha, Vector x, Vector y) {
+				return MappedCSRMatrix.this.transMultAdd(alpha, x, y);
+			}
+
+			@Override
+			public Vector transMultAdd(double alpha, Vector x, Vector y) {
+				return MappedCSRMatrix.this.multAdd(alpha, x, y);
+			}
+
+			@Override
+			public Matrix scale(double alpha) {
+				throw new UnsupportedOperationException(
+						"A mapped matrix is read-only");
+			}
+
+			@Override
+			public Matrix transpose() {
+				return MappedCSRMatrix.this;
+			}
+
+			@Override
+			public Vector getImageVectorTemplate() {
+				return new DenseVector(numRows());
+			}
+
+			@Override
+			public Vector getDomainVectorTemplate() {
+				return new DenseVector(numColumns());
+			}
+		};
+	}
+
+	@Override
+	public Vector getImageVectorTemplate() {
+		return new DenseVector(numRows());
+	}
+
+	@Override
+	public Vector getDomainVectorTemplate() {
+		return new DenseVector(numColumns());
+	}
+}
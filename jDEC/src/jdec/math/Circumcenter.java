@@ -2,9 +2,15 @@ package jdec.math;
 
 import java.util.Arrays;
 
-import no.uib.cipr.matrix.DenseLU;
-import no.uib.cipr.matrix.DenseMatrix;
-
+/**
+ * Circumcenters of simplices. For edges, triangles and tetrahedra, the
+ * circumcenter p0 + s1 e1 + ... + sm em, with ei = pi - p0, is given in
+ * closed form by Cramer's rule applied to the Gram system G s = diag(G) / 2
+ * (the explicit circumcenter formula), in any embedding dimension and without
+ * allocation; larger simplices are handled by a Cholesky factorization of
+ * the same system, performed in place in a {@link Workspace}.
+ *
+ */
 public class Circumcenter {
 
 	private static final double DEFAULT_TOLERANCE = 1.e-8;
@@ -28,61 +34,359 @@ public class Circumcenter {
 	/**
 	 * Calculate barycentric coordinates relative to a list of N = K+1 distinct
 	 * points defining a simplex in K-space.
-	 * 
+	 *
 	 * @see http://www.ics.uci.edu/~eppstein/junkyard/circumcenter.html
-	 * 
+	 *
 	 * @param points
 	 *            points as a K+1 X K array, N=K+1 number of points
 	 * @return the K+1 barycentric coordinates, with sum equal to 1
 	 */
 	public static double[] barycentricCoordCircumcenter(double[][] points,
 			int[] indices) {
-		DenseMatrix m = new DenseMatrix(indices.length, points[0].length);
-		for (int idx : indices)
-			for (int i = 0; i < points[idx].length; i++)
-				m.set(idx, i, points[idx][i]);
-		int n = m.numRows();
-		int k = m.numColumns();
+		double[] bary = new double[indices.length];
+		barycentricCoordCircumcenter(points, indices, bary);
+		return bary;
+	}
+
+	/**
+	 * Calculate the barycentric coordinates of the circumcenter of a simplex
+	 * into an array supplied by the caller
+	 *
+	 * @param points
+	 * @param indices
+	 *            the indices of the N vertices of the simplex in points
+	 * @param bary
+	 *            array of at least N entries receiving the coordinates
+	 */
+	public static void barycentricCoordCircumcenter(double[][] points,
+			int[] indices, double[] bary) {
+		barycentricCoordCircumcenter(points, indices, bary, null);
+	}
+
+	/**
+	 * Calculate the barycentric coordinates of the circumcenter of a simplex
+	 * into an array supplied by the caller, using a workspace for simplices
+	 * with more than 4 vertices
+	 *
+	 * @param points
+	 * @param indices
+	 *            the indices of the N vertices of the simplex in points
+	 * @param bary
+	 *            array of at least N entries receiving the coordinates
+	 * @param workspace
+	 *            the workspace, or null to allocate one if needed
+	 */
+	public static void barycentricCoordCircumcenter(double[][] points,
+			int[] indices, double[] bary, Workspace workspace) {
+		int n = indices.length;
+		int k = points[0].length;
 		if (n > k + 1)
 			throw new IllegalArgumentException(
 					"Cannot evaluate barycentric coordinates in dimension " + k
 							+ " w.r.t. " + n + " points");
-		DenseMatrix A = new DenseMatrix(n + 1, n + 1);
-		DenseMatrix x = new DenseMatrix(n + 1, 1);
-		for (int i = 0; i < n; i++) {
-			double[] pti = points[indices[i]];
-			for (int j = 0; j < n; j++) {
-				double scal = 0;
-				double[] ptj = points[indices[j]];
+		if (!gramCoefficients(points, indices, bary, 1)) {
+			if (workspace == null)
+				workspace = new Workspace(n);
+			solveGram(points, indices, workspace);
+			System.arraycopy(workspace.vector, 0, bary, 1, n - 1);
+		}
+		double sum = 0;
+		for (int i = 1; i < n; i++)
+			sum += bary[i];
+		bary[0] = 1 - sum;
+	}
+
+	/**
+	 * @return the K coordinates of the circumcenter, followed by the
+	 *         circumradius
+	 */
+	public static double[] circumcenter(double[][] points, int[] indices) {
+		double[] center = new double[points[0].length + 1];
+		center[center.length - 1] = circumcenter(points, indices, center);
+		return center;
+	}
+
+	/**
+	 * Calculate the circumcenter of a simplex into an array supplied by the
+	 * caller
+	 *
+	 * @param points
+	 * @param indices
+	 *            the indices of the vertices of the simplex in points
+	 * @param center
+	 *            array of at least K entries receiving the coordinates
+	 * @return the circumradius
+	 */
+	public static double circumcenter(double[][] points, int[] indices,
+			double[] center) {
+		return circumcenter(points, indices, center, null);
+	}
+
+	/**
+	 * Calculate the circumcenter of a simplex into an array supplied by the
+	 * caller, using a workspace for simplices with more than 4 vertices
+	 *
+	 * @param points
+	 * @param indices
+	 *            the indices of the vertices of the simplex in points
+	 * @param center
+	 *            array of at least K entries receiving the coordinates
+	 * @param workspace
+	 *            the workspace, or null to allocate one if needed
+	 * @return the circumradius
+	 */
+	public static double circumcenter(double[][] points, int[] indices,
+			double[] center, Workspace workspace) {
+		int n = indices.length;
+		int k = points[0].length;
+		if (n > k + 1)
+			throw new IllegalArgumentException(
+					"Cannot evaluate the circumcenter in dimension " + k
+							+ " of " + n + " points");
+		double[] pt0 = points[indices[0]];
+		if (gramCoefficients(points, indices, center, 0)) {
+			// the coefficients are stored in the first n - 1 entries of center
+			double s1 = n > 1 ? center[0] : 0;
+			double s2 = n > 2 ? center[1] : 0;
+			double s3 = n > 3 ? center[2] : 0;
+			double radius = 0;
+			for (int c = 0; c < k; c++) {
+				double x = 0;
+				if (n > 1)
+					x += s1 * (points[indices[1]][c] - pt0[c]);
+				if (n > 2)
+					x += s2 * (points[indices[2]][c] - pt0[c]);
+				if (n > 3)
+					x += s3 * (points[indices[3]][c] - pt0[c]);
+				center[c] = pt0[c] + x;
+				radius += x * x;
+			}
+			return Math.sqrt(radius);
+		}
+
+		if (workspace == null)
+			workspace = new Workspace(n);
+		solveGram(points, indices, workspace);
+		double[] s = workspace.vector;
+		double radius = 0;
+		for (int c = 0; c < k; c++) {
+			double x = 0;
+			for (int i = 1; i < n; i++)
+				x += s[i - 1] * (points[indices[i]][c] - pt0[c]);
+			center[c] = pt0[c] + x;
+			radius += x * x;
+		}
+		return Math.sqrt(radius);
+	}
+
+	/**
+	 * Circumcenters of a range of simplices of a flat table, in one pass: the
+	 * kernel is chosen once for the whole range, and the coordinates are read
+	 * directly from the flat store.
+	 *
+	 * @param points
+	 * @param simplices
+	 *            the vertex indices of the simplices, simplex i being stored
+	 *            in <code>[i * stride, (i + 1) * stride)</code>
+	 * @param stride
+	 *            the number of vertices of each simplex
+	 * @param from
+	 * @param to
+	 * @param centers
+	 *            receives the K coordinates of the circumcenter of simplex i
+	 *            in centers[i], for i in [from, to)
+	 * @param workspace
+	 *            the workspace, or null to allocate one
+	 */
+	public static void circumcenters(Coordinates points, int[] simplices,
+			int stride, int from, int to, double[][] centers,
+			Workspace workspace) {
+		double[] x = points.data();
+		int k = points.dimension();
+		if (stride == 0 || stride > k + 1)
+			throw new IllegalArgumentException(
+					"Cannot evaluate the circumcenter in dimension " + k
+							+ " of " + stride + " points");
+		if (workspace == null)
+			workspace = new Workspace(Math.max(stride, 4));
+		workspace.ensureCapacity(3);
+		double[] s = workspace.vector;
+		switch (stride) {
+		case 1:
+			for (int i = from; i < to; i++)
+				System.arraycopy(x, simplices[i] * k, centers[i], 0, k);
+			return;
+		case 2:
+			for (int i = from; i < to; i++) {
+				int a = simplices[2 * i] * k;
+				int b = simplices[2 * i + 1] * k;
+				double[] center = centers[i];
+				for (int c = 0; c < k; c++)
+					center[c] = x[a + c] + 0.5 * (x[b + c] - x[a + c]);
+			}
+			return;
+		case 3:
+			for (int i = from; i < to; i++) {
+				int a = simplices[3 * i] * k;
+				int b = simplices[3 * i + 1] * k;
+				int d = simplices[3 * i + 2] * k;
+				double g11 = 0, g12 = 0, g22 = 0;
+				for (int c = 0; c < k; c++) {
+					double u = x[b + c] - x[a + c];
+					double v = x[d + c] - x[a + c];
+					g11 += u * u;
+					g12 += u * v;
+					g22 += v * v;
+				}
+				triangleCoefficients(g11, g12, g22, s, 0);
+				double s1 = s[0], s2 = s[1];
+				double[] center = centers[i];
+				for (int c = 0; c < k; c++)
+					center[c] = x[a + c]
+							+ (s1 * (x[b + c] - x[a + c]) + s2
+									* (x[d + c] - x[a + c]));
+			}
+			return;
+		case 4:
+			for (int i = from; i < to; i++) {
+				int a = simplices[4 * i] * k;
+				int b = simplices[4 * i + 1] * k;
+				int d = simplices[4 * i + 2] * k;
+				int e = simplices[4 * i + 3] * k;
+				double g11 = 0, g12 = 0, g22 = 0, g13 = 0, g23 = 0, g33 = 0;
+				for (int c = 0; c < k; c++) {
+					double u = x[b + c] - x[a + c];
+					double v = x[d + c] - x[a + c];
+					double w = x[e + c] - x[a + c];
+					g11 += u * u;
+					g12 += u * v;
+					g22 += v * v;
+					g13 += u * w;
+					g23 += v * w;
+					g33 += w * w;
+				}
+				tetrahedronCoefficients(g11, g12, g22, g13, g23, g33, s, 0);
+				double s1 = s[0], s2 = s[1], s3 = s[2];
+				double[] center = centers[i];
 				for (int c = 0; c < k; c++)
-					scal += pti[c] * ptj[c];
-				A.set(i, j, 2 * scal);
-				if (i == j)
-					x.set(i, 0, scal);
+					center[c] = x[a + c]
+							+ (s1 * (x[b + c] - x[a + c]) + s2
+									* (x[d + c] - x[a + c]) + s3
+									* (x[e + c] - x[a + c]));
 			}
+			return;
 		}
-		for (int i = 0; i < n; i++) {
-			A.set(i, n, 1);
-			A.set(n, i, 1);
+		int m = stride - 1;
+		for (int i = from; i < to; i++) {
+			int offset = stride * i;
+			workspace.gram(x, k, simplices, offset, stride);
+			solveGram(workspace, m);
+			s = workspace.vector;
+			int a = simplices[offset] * k;
+			double[] center = centers[i];
+			for (int c = 0; c < k; c++) {
+				double y = 0;
+				for (int j = 1; j < stride; j++)
+					y += s[j - 1] * (x[simplices[offset + j] * k + c] - x[a + c]);
+				center[c] = x[a + c] + y;
+			}
 		}
-		x.set(n, 0, 1);
-		new DenseLU(n + 1, n + 1).factor(A).solve(x);
-		return Arrays.copyOf(x.getData(), n);
 	}
 
-	public static double[] circumcenter(double[][] points, int[] indices) {
-		double[] bary = barycentricCoordCircumcenter(points, indices);
-		double[] center = new double[points[0].length + 1];
-		for (int i = 0; i < indices.length; i++) {
-			double[] pti = points[indices[i]];
-			for (int j = 0; j < pti.length; j++)
-				center[j] += bary[i] * pti[j];
+	/**
+	 * Solve the Gram system G s = diag(G) / 2 by an in-place Cholesky
+	 * factorization; the solution is left in the vector of the workspace (NaN
+	 * for a degenerate simplex)
+	 */
+	private static void solveGram(double[][] points, int[] indices,
+			Workspace workspace) {
+		int m = indices.length - 1;
+		workspace.gram(points, indices, 0, m + 1);
+		solveGram(workspace, m);
+	}
+
+	/**
+	 * Solve the Gram system of size m assembled in the workspace
+	 */
+	private static void solveGram(Workspace workspace, int m) {
+		for (int i = 0; i < m; i++)
+			workspace.vector[i] = workspace.matrix[i * m + i] / 2;
+		if (workspace.cholesky(m))
+			workspace.choleskySolve(m);
+		else
+			Arrays.fill(workspace.vector, 0, m, Double.NaN);
+	}
+
+	/**
+	 * Closed-form solution of the Gram system G s = diag(G) / 2 of a simplex
+	 * with at most 4 vertices, whose circumcenter is p0 + sum si (pi - p0)
+	 *
+	 * @param s
+	 *            receives the N - 1 coefficients, from offset
+	 * @return false if the simplex has more than 4 vertices
+	 */
+	private static boolean gramCoefficients(double[][] points, int[] indices,
+			double[] s, int offset) {
+		int n = indices.length;
+		if (n > 4)
+			return false;
+		if (n == 1)
+			return true;
+		if (n == 2) {
+			s[offset] = 0.5;
+			return true;
 		}
-		double[] pt0 = points[indices[0]];
-		for (int j = 0; j < center.length - 1; j++)
-			center[center.length - 1] += (center[j] - pt0[j])
-					* (center[j] - pt0[j]);
-		center[center.length - 1] = Math.sqrt(center[center.length - 1]);
-		return center;
+		double[] p0 = points[indices[0]];
+		double[] p1 = points[indices[1]];
+		double[] p2 = points[indices[2]];
+		double[] p3 = n == 4 ? points[indices[3]] : null;
+		double g11 = 0, g12 = 0, g22 = 0, g13 = 0, g23 = 0, g33 = 0;
+		for (int c = 0; c < p0.length; c++) {
+			double u = p1[c] - p0[c];
+			double v = p2[c] - p0[c];
+			g11 += u * u;
+			g12 += u * v;
+			g22 += v * v;
+			if (n == 4) {
+				double w = p3[c] - p0[c];
+				g13 += u * w;
+				g23 += v * w;
+				g33 += w * w;
+			}
+		}
+		if (n == 3)
+			triangleCoefficients(g11, g12, g22, s, offset);
+		else
+			tetrahedronCoefficients(g11, g12, g22, g13, g23, g33, s, offset);
+		return true;
+	}
+
+	/**
+	 * Closed-form solution of the 2 x 2 Gram system of a triangle
+	 */
+	private static void triangleCoefficients(double g11, double g12,
+			double g22, double[] s, int offset) {
+		double det = 2 * (g11 * g22 - g12 * g12);
+		s[offset] = g22 * (g11 - g12) / det;
+		s[offset + 1] = g11 * (g22 - g12) / det;
+	}
+
+	/**
+	 * Closed-form solution of the 3 x 3 Gram system of a tetrahedron
+	 */
+	private static void tetrahedronCoefficients(double g11, double g12,
+			double g22, double g13, double g23, double g33, double[] s,
+			int offset) {
+		// cofactors of the (symmetric) Gram matrix
+		double c11 = g22 * g33 - g23 * g23;
+		double c12 = g13 * g23 - g12 * g33;
+		double c13 = g12 * g23 - g13 * g22;
+		double c22 = g11 * g33 - g13 * g13;
+		double c23 = g12 * g13 - g11 * g23;
+		double c33 = g11 * g22 - g12 * g12;
+		double det = 2 * (g11 * c11 + g12 * c12 + g13 * c13);
+		s[offset] = (c11 * g11 + c12 * g22 + c13 * g33) / det;
+		s[offset + 1] = (c12 * g11 + c22 * g22 + c23 * g33) / det;
+		s[offset + 2] = (c13 * g11 + c23 * g22 + c33 * g33) / det;
 	}
 }
@@ -0,0 +1,96 @@
+package jdec.math;
+
+/**
+ * A flat store of the coordinates of a set of points: the coordinates of
+ * point i are interleaved in <code>[i * dimension, (i + 1) * dimension)</code>
+ * of a single array, so that geometry kernels read the points of a simplex
+ * without going through one array per point.
+ *
+ */
+public class Coordinates {
+
+	private final double[] data;
+	private final int size;
+	private final int dimension;
+
+	/**
+	 * @param data
+	 *            the coordinates, at least size * dimension entries
+	 * @param size
+	 *            the number of points
+	 * @param dimension
+	 *            the number of coordinates of each point
+	 */
+	public Coordinates(double[] data, int size, int dimension) {
+		if (dimension < 1 || data.length < size * dimension)
+			throw new IllegalArgumentException("Invalid coordinates " + size
+					+ "x" + dimension + " for " + data.length + " entries");
+		this.data = data;
+		this.size = size;
+		this.dimension = dimension;
+	}
+
+	/**
+	 * @param points
+	 *            the points, all of the same dimension
+	 * @return a copy of the coordinates of the points
+	 */
+	public static Coordinates of(double[][] points) {
+		int dimension = points.length == 0 ? 1 : points[0].length;
+		double[] data = new double[points.length * dimension];
+		for (int i = 0; i < points.length; i++) {
+			if (points[i].length != dimension)
+				throw new IllegalArgumentException("Point " + i
+						+ " is not of dimension " + dimension);
+			System.arraycopy(points[i], 0, data, i * dimension, dimension);
+		}
+		return new Coordinates(data, points.length, dimension);
+	}
+
+	/**
+	 * @return the number of points
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of coordinates of each point
+	 */
+	public int dimension() {
+		return dimension;
+	}
+
+	/**
+	 * The backing array. Point i starts at <code>offset(i)</code>.
+	 *
+	 * @return
+	 */
+	public double[] data() {
+		return data;
+	}
+
+	public int offset(int point) {
+		return point * dimension;
+	}
+
+	public double get(int point, int coordinate) {
+		return data[point * dimension + coordinate];
+	}
+
+	/**
+	 * @return the coordinates of a point, in a new array
+	 */
+	public double[] point(int point) {
+		double[] p = new double[dimension];
+		System.arraycopy(data, point * dimension, p, 0, dimension);
+		return p;
+	}
+
+	public double[][] toArray() {
+		double[][] points = new double[size][];
+		for (int i = 0; i < size; i++)
+			points[i] = point(i);
+		return points;
+	}
+}
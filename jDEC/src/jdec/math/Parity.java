@@ -1,12 +1,5 @@
 package jdec.math;
 
-import it.unimi.dsi.fastutil.ints.Int2IntAVLTreeMap;
-import it.unimi.dsi.fastutil.ints.Int2IntMap;
-import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
-import it.unimi.dsi.fastutil.ints.Int2IntSortedMap;
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
-import it.unimi.dsi.fastutil.ints.IntSet;
-
 import java.util.Arrays;
 
 public class Parity {
@@ -20,18 +13,86 @@ public class Parity {
 		if (a.length != b.length)
 			throw new IllegalArgumentException(
 					"A and B are not a permutation of each other");
-		Int2IntMap aMap = new Int2IntOpenHashMap();
-		int c = 0;
-		for (int aEntry : a)
-			aMap.put(aEntry, c++);
-		if (aMap.size() != a.length)
-			throw new IllegalArgumentException("A contains duplicate values");
-		int[] permutation = new int[a.length];
-		c = 0;
-		for (int bEntry : b)
-			permutation[c++] = aMap.get(bEntry);
+		int[] sortedA = Arrays.copyOf(a, a.length);
+		int[] sortedB = Arrays.copyOf(b, b.length);
+		int parity = canonicalize(sortedA, 0, a.length)
+				+ canonicalize(sortedB, 0, b.length);
+		for (int i = 1; i < sortedA.length; i++)
+			if (sortedA[i - 1] == sortedA[i])
+				throw new IllegalArgumentException("A contains duplicate values");
+		if (!Arrays.equals(sortedA, sortedB))
+			throw new IllegalArgumentException(
+					"A and B are not a permutation of each other");
+		// both arrays are related to the same sorted array
+		return parity % 2;
+	}
+
+	/**
+	 * Sort a[offset, offset + length) in place and return the parity of the
+	 * permutation that sorted it. This is the kernel used to canonicalize
+	 * simplices: up to 5 vertices, the entries are sorted by a fixed sorting
+	 * network and the parity is given by the number of swaps; longer arrays
+	 * are sorted by insertion sort, counting the inversions. No allocation is
+	 * performed.
+	 * 
+	 * @param a
+	 * @param offset
+	 * @param length
+	 * @return 0 if the array was an even permutation of its sorted version, 1
+	 *         otherwise
+	 */
+	public static int canonicalize(int[] a, int offset, int length) {
+		int o = offset;
+		switch (length) {
+		case 0:
+		case 1:
+			return 0;
+		case 2:
+			return compareSwap(a, o, o + 1);
+		case 3:
+			return (compareSwap(a, o + 1, o + 2) + compareSwap(a, o, o + 2) + compareSwap(
+					a, o, o + 1)) & 1;
+		case 4:
+			return (compareSwap(a, o, o + 1) + compareSwap(a, o + 2, o + 3)
+					+ compareSwap(a, o, o + 2) + compareSwap(a, o + 1, o + 3) + compareSwap(
+						a, o + 1, o + 2)) & 1;
+		case 5:
+			return (compareSwap(a, o, o + 1) + compareSwap(a, o + 3, o + 4)
+					+ compareSwap(a, o + 2, o + 4)
+					+ compareSwap(a, o + 2, o + 3)
+					+ compareSwap(a, o, o + 3) + compareSwap(a, o, o + 2)
+					+ compareSwap(a, o + 1, o + 4)
+					+ compareSwap(a, o + 1, o + 3) + compareSwap(a, o + 1,
+						o + 2)) & 1;
+		default:
+			int inversions = 0;
+			int end = offset + length;
+			for (int i = offset + 1; i < end; i++) {
+				int x = a[i];
+				int j = i - 1;
+				while (j >= offset && a[j] > x) {
+					a[j + 1] = a[j];
+					j--;
+				}
+				a[j + 1] = x;
+				inversions += i - 1 - j;
+			}
+			return inversions & 1;
+		}
+	}
 
-		return permutationParity(permutation, false);
+	/**
+	 * A comparator of a sorting network: order a[i], a[j] and return 1 if they
+	 * were swapped
+	 */
+	private static int compareSwap(int[] a, int i, int j) {
+		if (a[i] > a[j]) {
+			int t = a[i];
+			a[i] = a[j];
+			a[j] = t;
+			return 1;
+		}
+		return 0;
 	}
 
 	/**
@@ -44,11 +105,28 @@ public class Parity {
 	public static int parityWRToSorted(int[] a) {
 		if (a == null)
 			throw new NullPointerException();
-		Int2IntSortedMap aMap = new Int2IntAVLTreeMap();
-		int c = 0;
-		for (int aEntry : a)
-			aMap.put(aEntry, c++);
-		return permutationParity(aMap.values().toIntArray(), false);
+		return parityWRToSorted(a, 0, a.length);
+	}
+
+	/**
+	 * Compute the relative parity between a[offset, offset + length) and its
+	 * sorted version, by counting inversions. The array is not modified and no
+	 * allocation is performed; the cost is quadratic in length, which is
+	 * intended to be small (e.g., the vertices of a simplex).
+	 * 
+	 * @param a
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public static int parityWRToSorted(int[] a, int offset, int length) {
+		int inversions = 0;
+		int end = offset + length;
+		for (int i = offset; i < end; i++)
+			for (int j = i + 1; j < end; j++)
+				if (a[i] > a[j])
+					inversions++;
+		return inversions % 2;
 	}
 
 	/**
@@ -98,17 +176,17 @@ public class Parity {
 		// disjoint, \sum_{i=0}^c l_i = n ==> o_i = n mod 2 with o_i the number
 		// of odd cycles. Since e_i = c - o_i, it follows e_i = (n - c) mod 2.
 		int c = 0;
-		IntSet seen = new IntOpenHashSet();
+		boolean[] seen = new boolean[n];
 		for (int i = 0; i < n; i++) {
 			// start a new cycle using a starting position not yet traversed
 			// (i.e., belonging to a new cycle)
-			if (seen.contains(i))
+			if (seen[i])
 				continue;
 			c++;
 			int j = i;
 			// follow a cycle and mark the positions which have been traversed
 			do {
-				seen.add(j);
+				seen[j] = true;
 				j = permutation[j];
 			} while (j != i);
 		}
@@ -1,12 +1,13 @@
 package jdec.math;
 
-import no.uib.cipr.matrix.DenseCholesky;
-import no.uib.cipr.matrix.DenseLU;
-import no.uib.cipr.matrix.DenseMatrix;
-import no.uib.cipr.matrix.UnitLowerTriangDenseMatrix;
-import no.uib.cipr.matrix.UpperSPDDenseMatrix;
-import no.uib.cipr.matrix.UpperTriangDenseMatrix;
-
+/**
+ * Volumes of simplices. Edges, triangles and tetrahedra are handled by
+ * closed-form kernels (cross products in 2D and 3D, Gram determinants in
+ * higher dimensions), which perform no allocation; larger simplices are
+ * handled by factorizations performed in place in a {@link Workspace}, which
+ * the caller can reuse from one simplex to the next.
+ *
+ */
 public class Volume {
 
 	private Volume() {
@@ -15,116 +16,457 @@ public class Volume {
 	/**
 	 * Calculate the unsigned volume of a list of N = K+1 distinct points
 	 * defining a simplex in K-space.
-	 * 
+	 *
 	 * @see http://www.ics.uci.edu/~eppstein/junkyard/circumcenter.html
-	 * 
+	 *
 	 * @param points
 	 *            points as a K+1 X K array, N=K+1 number of points
 	 * @return the unsigned volume
-	 * 
+	 *
 	 * @see http://www.math.niu.edu/~rusin/known-math/97/volumes.polyh
 	 */
 	public static double unsignedVolume(double[][] points, int[] indices) {
-		DenseMatrix m = new DenseMatrix(indices.length, points[0].length);
-		int n = m.numRows();
-		int k = m.numColumns();
-		for (int idx : indices)
-			for (int i = 0; i < points[idx].length; i++)
-				m.set(idx, i, points[idx][i]);
+		return unsignedVolume(points, indices, null);
+	}
 
+	/**
+	 * Unsigned volume of a simplex, using a workspace for simplices with more
+	 * than 4 vertices
+	 * 
+	 * @param points
+	 * @param indices
+	 * @param workspace
+	 *            the workspace, or null to allocate one if needed
+	 * @return the unsigned volume
+	 */
+	public static double unsignedVolume(double[][] points, int[] indices,
+			Workspace workspace) {
+		int n = indices.length;
+		int k = points[0].length;
 		if (n == 0 || n > k + 1)
 			throw new IllegalArgumentException("cannot calculate volume of "
 					+ n + " points in dimension " + k);
-		if (n == 1)
+		switch (n) {
+		case 1:
 			return 1; // standard value for 0-simplices
-
-		UpperSPDDenseMatrix A = new UpperSPDDenseMatrix(n - 1);
-
-		double[] pt0 = points[indices[0]];
-		for (int i = 1; i < n; i++) {
-			double[] pti = points[indices[i]];
-			for (int j = i; j < n; j++) {
-				double[] ptj = points[indices[j]];
-				for (int c = 0; c < k; c++)
-					A.add(i - 1, j - 1, (pti[c] - pt0[c]) * (ptj[c] - pt0[c]));
-			}
+		case 2:
+			return length(points[indices[0]], points[indices[1]]);
+		case 3:
+			return area(points[indices[0]], points[indices[1]],
+					points[indices[2]]);
+		case 4:
+			return volume(points[indices[0]], points[indices[1]],
+					points[indices[2]], points[indices[3]]);
 		}
-
-		UpperTriangDenseMatrix U = new DenseCholesky(n - 1, true).factor(A)
-				.getU();
-		double det = 1;
-		for (int i = 1; i < n; i++)
-			det *= U.get(i - 1, i - 1) / i;
-		return det < 0 ? -det : det;
-
+		return gramVolume(points, indices, 0, n, workspace);
 	}
 
 	public static double unsignedVolume(double[][] points, int from, int to) {
-		DenseMatrix m = new DenseMatrix(to - from, points[0].length);
-		int n = m.numRows();
-		int k = m.numColumns();
-		for (int idx = from; idx < to; idx++)
-			for (int i = 0; i < points[idx].length; i++)
-				m.set(idx, i, points[idx][i]);
+		return unsignedVolume(points, from, to, null);
+	}
 
+	/**
+	 * Unsigned volume of the simplex of the points points[from, to), using a
+	 * workspace for simplices with more than 4 vertices
+	 * 
+	 * @param points
+	 * @param from
+	 * @param to
+	 * @param workspace
+	 *            the workspace, or null to allocate one if needed
+	 * @return the unsigned volume
+	 */
+	public static double unsignedVolume(double[][] points, int from, int to,
+			Workspace workspace) {
+		int n = to - from;
+		int k = points[from].length;
 		if (n == 0 || n > k + 1)
 			throw new IllegalArgumentException("cannot calculate volume of "
 					+ n + " points in dimension " + k);
-		if (n == 1)
+		switch (n) {
+		case 1:
 			return 1; // standard value for 0-simplices
-
-		UpperSPDDenseMatrix A = new UpperSPDDenseMatrix(n - 1);
-
-		double[] pt0 = points[from];
-		for (int i = 1; i < n; i++) {
-			double[] pti = points[from + i];
-			for (int j = i; j < n; j++) {
-				double[] ptj = points[from + j];
-				for (int c = 0; c < k; c++)
-					A.add(i - 1, j - 1, (pti[c] - pt0[c]) * (ptj[c] - pt0[c]));
-			}
+		case 2:
+			return length(points[from], points[from + 1]);
+		case 3:
+			return area(points[from], points[from + 1], points[from + 2]);
+		case 4:
+			return volume(points[from], points[from + 1], points[from + 2],
+					points[from + 3]);
 		}
+		return gramVolume(points, null, from, n, workspace);
+	}
 
-		UpperTriangDenseMatrix U = new DenseCholesky(n - 1, true).factor(A)
-				.getU();
+	/**
+	 * Volume from the Cholesky factorization of the Gram matrix:
+	 * sqrt(det(G)) / (n-1)!
+	 */
+	private static double gramVolume(double[][] points, int[] indices,
+			int from, int n, Workspace workspace) {
+		if (workspace == null)
+			workspace = new Workspace(n);
+		workspace.gram(points, indices, from, n);
+		return gramVolume(workspace, n);
+	}
+
+	/**
+	 * Volume from the Gram matrix assembled in the workspace
+	 */
+	private static double gramVolume(Workspace workspace, int n) {
+		int m = n - 1;
+		if (!workspace.cholesky(m))
+			return 0; // degenerate simplex
 		double det = 1;
 		for (int i = 1; i < n; i++)
-			det *= U.get(i - 1, i - 1) / i;
-		return det < 0 ? -det : det;
+			det *= workspace.matrix[(i - 1) * m + i - 1] / i;
+		return det;
 	}
 
 	public static double signedVolume(double[][] points, int[] indices) {
-		DenseMatrix m = new DenseMatrix(indices.length, points[0].length);
-		for (int idx : indices)
-			for (int i = 0; i < points[idx].length; i++)
-				m.set(idx, i, points[idx][i]);
+		return signedVolume(points, indices, null);
+	}
 
-		int n = m.numRows();
-		int k = m.numColumns();
+	/**
+	 * Signed volume of a simplex of the embedding space, using a workspace
+	 * for simplices with more than 4 vertices
+	 * 
+	 * @param points
+	 * @param indices
+	 * @param workspace
+	 *            the workspace, or null to allocate one if needed
+	 * @return the signed volume, positive if (p1 - p0, ..., pk - p0) is a
+	 *         direct basis
+	 */
+	public static double signedVolume(double[][] points, int[] indices,
+			Workspace workspace) {
+		int n = indices.length;
+		int k = points[0].length;
 		if (n != k + 1)
 			throw new IllegalArgumentException(n + " points in dimension " + k
 					+ " do not define a simplex");
-		if (n == 1)
+		switch (n) {
+		case 1:
 			return 1; // standard value for 0-simplices
+		case 2:
+			return points[indices[1]][0] - points[indices[0]][0];
+		case 3:
+			return signedArea(points[indices[0]], points[indices[1]],
+					points[indices[2]]);
+		case 4:
+			return signedVolume(points[indices[0]], points[indices[1]],
+					points[indices[2]], points[indices[3]]);
+		}
 
-		DenseMatrix A = new DenseMatrix(n - 1, k);
+		if (workspace == null)
+			workspace = new Workspace(n);
+		workspace.ensureCapacity(k);
 		double[] pt0 = points[indices[0]];
 		for (int i = 1; i < n; i++) {
 			double[] pti = points[indices[i]];
 			for (int c = 0; c < k; c++)
-				A.set(i - 1, c, pti[c] - pt0[c]);
+				workspace.matrix[(i - 1) * k + c] = pti[c] - pt0[c];
 		}
-		DenseLU lu = new DenseLU(n - 1, n - 1).factor(A);
-		UnitLowerTriangDenseMatrix L = lu.getL();
-		UpperTriangDenseMatrix U = lu.getU();
-		double det = 1;
-		for (int i = 1; i < n; i++)
-			det *= L.get(i - 1, i - 1) / i; // divide by i to produce n! in the
-		// denominator
-		for (int i = 1; i < n; i++)
-			det *= U.get(i - 1, i - 1);
-
+		double det = workspace.determinant(k);
+		for (int i = 2; i < n; i++)
+			det /= i; // to produce n! in the denominator
 		return det;
 	}
 
+	/**
+	 * Unsigned volumes of a range of simplices of a flat table, in one pass:
+	 * the kernel is chosen once for the whole range, and the coordinates are
+	 * read directly from the flat store.
+	 *
+	 * @param points
+	 * @param simplices
+	 *            the vertex indices of the simplices, simplex i being stored
+	 *            in <code>[i * stride, (i + 1) * stride)</code>
+	 * @param stride
+	 *            the number of vertices of each simplex
+	 * @param from
+	 * @param to
+	 * @param volumes
+	 *            receives the volume of simplex i at index i, for i in [from,
+	 *            to)
+	 * @param workspace
+	 *            the workspace, or null to allocate one if needed
+	 */
+	public static void unsignedVolumes(Coordinates points, int[] simplices,
+			int stride, int from, int to, double[] volumes, Workspace workspace) {
+		double[] x = points.data();
+		int k = points.dimension();
+		if (stride == 0 || stride > k + 1)
+			throw new IllegalArgumentException("cannot calculate volume of "
+					+ stride + " points in dimension " + k);
+		switch (stride) {
+		case 1:
+			for (int i = from; i < to; i++)
+				volumes[i] = 1; // standard value for 0-simplices
+			return;
+		case 2:
+			for (int i = from; i < to; i++) {
+				int a = simplices[2 * i] * k;
+				int b = simplices[2 * i + 1] * k;
+				double l = 0;
+				for (int c = 0; c < k; c++) {
+					double u = x[b + c] - x[a + c];
+					l += u * u;
+				}
+				volumes[i] = Math.sqrt(l);
+			}
+			return;
+		case 3:
+			if (k == 2)
+				for (int i = from; i < to; i++) {
+					double s = signedArea(x, simplices, 3 * i);
+					volumes[i] = s < 0 ? -s : s;
+				}
+			else if (k == 3)
+				for (int i = from; i < to; i++) {
+					int a = simplices[3 * i] * 3;
+					int b = simplices[3 * i + 1] * 3;
+					int d = simplices[3 * i + 2] * 3;
+					double ux = x[b] - x[a], uy = x[b + 1] - x[a + 1], uz = x[b + 2]
+							- x[a + 2];
+					double vx = x[d] - x[a], vy = x[d + 1] - x[a + 1], vz = x[d + 2]
+							- x[a + 2];
+					double cx = uy * vz - uz * vy;
+					double cy = uz * vx - ux * vz;
+					double cz = ux * vy - uy * vx;
+					volumes[i] = 0.5 * Math.sqrt(cx * cx + cy * cy + cz * cz);
+				}
+			else
+				for (int i = from; i < to; i++) {
+					int a = simplices[3 * i] * k;
+					int b = simplices[3 * i + 1] * k;
+					int d = simplices[3 * i + 2] * k;
+					double uu = 0, uv = 0, vv = 0;
+					for (int c = 0; c < k; c++) {
+						double u = x[b + c] - x[a + c];
+						double v = x[d + c] - x[a + c];
+						uu += u * u;
+						uv += u * v;
+						vv += v * v;
+					}
+					double det = uu * vv - uv * uv;
+					volumes[i] = det > 0 ? 0.5 * Math.sqrt(det) : 0;
+				}
+			return;
+		case 4:
+			if (k == 3)
+				for (int i = from; i < to; i++) {
+					double v = signedVolume(x, simplices, 4 * i);
+					volumes[i] = v < 0 ? -v : v;
+				}
+			else
+				for (int i = from; i < to; i++) {
+					int a = simplices[4 * i] * k;
+					int b = simplices[4 * i + 1] * k;
+					int d = simplices[4 * i + 2] * k;
+					int e = simplices[4 * i + 3] * k;
+					double uu = 0, uv = 0, uw = 0, vv = 0, vw = 0, ww = 0;
+					for (int c = 0; c < k; c++) {
+						double u = x[b + c] - x[a + c];
+						double v = x[d + c] - x[a + c];
+						double w = x[e + c] - x[a + c];
+						uu += u * u;
+						uv += u * v;
+						uw += u * w;
+						vv += v * v;
+						vw += v * w;
+						ww += w * w;
+					}
+					double det = uu * (vv * ww - vw * vw) - uv
+							* (uv * ww - vw * uw) + uw * (uv * vw - vv * uw);
+					volumes[i] = det > 0 ? Math.sqrt(det) / 6 : 0;
+				}
+			return;
+		}
+		if (workspace == null)
+			workspace = new Workspace(stride);
+		for (int i = from; i < to; i++) {
+			workspace.gram(x, k, simplices, stride * i, stride);
+			volumes[i] = gramVolume(workspace, stride);
+		}
+	}
+
+	/**
+	 * Signed volumes of a range of simplices of the embedding space of a flat
+	 * table, in one pass
+	 *
+	 * @param points
+	 * @param simplices
+	 *            the vertex indices of the simplices, simplex i being stored
+	 *            in <code>[i * stride, (i + 1) * stride)</code>
+	 * @param stride
+	 *            the number of vertices of each simplex, the dimension of the
+	 *            points plus one
+	 * @param from
+	 * @param to
+	 * @param volumes
+	 *            receives the volume of simplex i at index i, for i in [from,
+	 *            to)
+	 * @param workspace
+	 *            the workspace, or null to allocate one if needed
+	 */
+	public static void signedVolumes(Coordinates points, int[] simplices,
+			int stride, int from, int to, double[] volumes, Workspace workspace) {
+		double[] x = points.data();
+		int k = points.dimension();
+		if (stride != k + 1)
+			throw new IllegalArgumentException(stride + " points in dimension "
+					+ k + " do not define a simplex");
+		switch (stride) {
+		case 2:
+			for (int i = from; i < to; i++)
+				volumes[i] = x[simplices[2 * i + 1]] - x[simplices[2 * i]];
+			return;
+		case 3:
+			for (int i = from; i < to; i++)
+				volumes[i] = signedArea(x, simplices, 3 * i);
+			return;
+		case 4:
+			for (int i = from; i < to; i++)
+				volumes[i] = signedVolume(x, simplices, 4 * i);
+			return;
+		}
+		if (workspace == null)
+			workspace = new Workspace(stride);
+		workspace.ensureCapacity(k);
+		for (int i = from; i < to; i++) {
+			int p0 = simplices[stride * i] * k;
+			for (int j = 1; j < stride; j++) {
+				int pj = simplices[stride * i + j] * k;
+				for (int c = 0; c < k; c++)
+					workspace.matrix[(j - 1) * k + c] = x[pj + c] - x[p0 + c];
+			}
+			double det = workspace.determinant(k);
+			for (int j = 2; j < stride; j++)
+				det /= j;
+			volumes[i] = det;
+		}
+	}
+
+	/**
+	 * Signed area of the triangle of the plane whose vertex indices are
+	 * stored in simplices[offset, offset + 3)
+	 */
+	private static double signedArea(double[] x, int[] simplices, int offset) {
+		int a = simplices[offset] * 2;
+		int b = simplices[offset + 1] * 2;
+		int c = simplices[offset + 2] * 2;
+		return 0.5 * ((x[b] - x[a]) * (x[c + 1] - x[a + 1]) - (x[b + 1] - x[a + 1])
+				* (x[c] - x[a]));
+	}
+
+	/**
+	 * Signed volume of the tetrahedron of the space whose vertex indices are
+	 * stored in simplices[offset, offset + 4)
+	 */
+	private static double signedVolume(double[] x, int[] simplices, int offset) {
+		int a = simplices[offset] * 3;
+		int b = simplices[offset + 1] * 3;
+		int c = simplices[offset + 2] * 3;
+		int d = simplices[offset + 3] * 3;
+		double ux = x[b] - x[a], uy = x[b + 1] - x[a + 1], uz = x[b + 2] - x[a + 2];
+		double vx = x[c] - x[a], vy = x[c + 1] - x[a + 1], vz = x[c + 2] - x[a + 2];
+		double wx = x[d] - x[a], wy = x[d + 1] - x[a + 1], wz = x[d + 2] - x[a + 2];
+		return (ux * (vy * wz - vz * wy) - uy * (vx * wz - vz * wx) + uz
+				* (vx * wy - vy * wx)) / 6;
+	}
+
+	/**
+	 * @return the length of the edge [a, b], in any dimension
+	 */
+	public static double length(double[] a, double[] b) {
+		double l = 0;
+		for (int c = 0; c < a.length; c++) {
+			double x = b[c] - a[c];
+			l += x * x;
+		}
+		return Math.sqrt(l);
+	}
+
+	/**
+	 * @return the area of the triangle [a, b, c], in any dimension
+	 */
+	public static double area(double[] a, double[] b, double[] c) {
+		switch (a.length) {
+		case 2: {
+			double s = signedArea(a, b, c);
+			return s < 0 ? -s : s;
+		}
+		case 3: {
+			double ux = b[0] - a[0], uy = b[1] - a[1], uz = b[2] - a[2];
+			double vx = c[0] - a[0], vy = c[1] - a[1], vz = c[2] - a[2];
+			double x = uy * vz - uz * vy;
+			double y = uz * vx - ux * vz;
+			double z = ux * vy - uy * vx;
+			return 0.5 * Math.sqrt(x * x + y * y + z * z);
+		}
+		default: {
+			// square root of the Gram determinant
+			double uu = 0, uv = 0, vv = 0;
+			for (int i = 0; i < a.length; i++) {
+				double u = b[i] - a[i];
+				double v = c[i] - a[i];
+				uu += u * u;
+				uv += u * v;
+				vv += v * v;
+			}
+			double det = uu * vv - uv * uv;
+			return det > 0 ? 0.5 * Math.sqrt(det) : 0;
+		}
+		}
+	}
+
+	/**
+	 * @return the area of the triangle [a, b, c] of the plane, positive if
+	 *         its vertices are in counterclockwise order
+	 */
+	public static double signedArea(double[] a, double[] b, double[] c) {
+		return 0.5 * ((b[0] - a[0]) * (c[1] - a[1]) - (b[1] - a[1])
+				* (c[0] - a[0]));
+	}
+
+	/**
+	 * @return the volume of the tetrahedron [a, b, c, d], in any dimension
+	 *         (at least 3)
+	 */
+	public static double volume(double[] a, double[] b, double[] c, double[] d) {
+		if (a.length == 3) {
+			double v = signedVolume(a, b, c, d);
+			return v < 0 ? -v : v;
+		}
+		// square root of the Gram determinant
+		double uu = 0, uv = 0, uw = 0, vv = 0, vw = 0, ww = 0;
+		for (int i = 0; i < a.length; i++) {
+			double u = b[i] - a[i];
+			double v = c[i] - a[i];
+			double w = d[i] - a[i];
+			uu += u * u;
+			uv += u * v;
+			uw += u * w;
+			vv += v * v;
+			vw += v * w;
+			ww += w * w;
+		}
+		double det = uu * (vv * ww - vw * vw) - uv * (uv * ww - vw * uw) + uw
+				* (uv * vw - vv * uw);
+		return det > 0 ? Math.sqrt(det) / 6 : 0;
+	}
+
+	/**
+	 * @return the volume of the tetrahedron [a, b, c, d] of the space,
+	 *         positive if (b - a, c - a, d - a) is a direct basis
+	 */
+	public static double signedVolume(double[] a, double[] b, double[] c,
+			double[] d) {
+		double ux = b[0] - a[0], uy = b[1] - a[1], uz = b[2] - a[2];
+		double vx = c[0] - a[0], vy = c[1] - a[1], vz = c[2] - a[2];
+		double wx = d[0] - a[0], wy = d[1] - a[1], wz = d[2] - a[2];
+		return (ux * (vy * wz - vz * wy) - uy * (vx * wz - vz * wx) + uz
+				* (vx * wy - vy * wx)) / 6;
+	}
+
 }
@@ -0,0 +1,167 @@
+package jdec.math;
+
+/**
+ * Scratch space for the general-dimension kernels of {@link Volume} and
+ * {@link Circumcenter}: the small dense systems of a simplex are assembled
+ * and factored in place in a flat array, so that no allocation is performed
+ * once the workspace has grown to the size of the largest simplex. A
+ * workspace is not thread-safe: each thread computing geometry should own
+ * one.
+ *
+ */
+public class Workspace {
+
+	// row-major square matrix, and right-hand side / solution
+	double[] matrix;
+	double[] vector;
+
+	public Workspace() {
+		this(4);
+	}
+
+	/**
+	 * @param verticesPerSimplex
+	 *            the largest number of vertices of the simplices to process
+	 */
+	public Workspace(int verticesPerSimplex) {
+		int n = Math.max(verticesPerSimplex, 1);
+		matrix = new double[n * n];
+		vector = new double[n];
+	}
+
+	/**
+	 * Make room for a system of size n
+	 */
+	void ensureCapacity(int n) {
+		if (vector.length < n) {
+			matrix = new double[n * n];
+			vector = new double[n];
+		}
+	}
+
+	/**
+	 * Assemble the Gram matrix of the edge vectors ei = pi - p0 of a simplex,
+	 * given by the points points[indices[i]] or points[from + i] if indices is
+	 * null, into the m x m matrix (m = n - 1)
+	 */
+	void gram(double[][] points, int[] indices, int from, int n) {
+		int m = n - 1;
+		ensureCapacity(m);
+		double[] pt0 = points[indices == null ? from : indices[0]];
+		int k = pt0.length;
+		for (int i = 1; i < n; i++) {
+			double[] pti = points[indices == null ? from + i : indices[i]];
+			for (int j = i; j < n; j++) {
+				double[] ptj = points[indices == null ? from + j : indices[j]];
+				double s = 0;
+				for (int c = 0; c < k; c++)
+					s += (pti[c] - pt0[c]) * (ptj[c] - pt0[c]);
+				matrix[(i - 1) * m + j - 1] = s;
+				matrix[(j - 1) * m + i - 1] = s;
+			}
+		}
+	}
+
+	/**
+	 * Assemble the Gram matrix of the edge vectors of a simplex whose n
+	 * vertex indices are stored in simplices[offset, offset + n), the
+	 * coordinates of point p being coordinates[p * k, (p + 1) * k)
+	 */
+	void gram(double[] coordinates, int k, int[] simplices, int offset, int n) {
+		int m = n - 1;
+		ensureCapacity(m);
+		int p0 = simplices[offset] * k;
+		for (int i = 1; i < n; i++) {
+			int pi = simplices[offset + i] * k;
+			for (int j = i; j < n; j++) {
+				int pj = simplices[offset + j] * k;
+				double s = 0;
+				for (int c = 0; c < k; c++)
+					s += (coordinates[pi + c] - coordinates[p0 + c])
+							* (coordinates[pj + c] - coordinates[p0 + c]);
+				matrix[(i - 1) * m + j - 1] = s;
+				matrix[(j - 1) * m + i - 1] = s;
+			}
+		}
+	}
+
+	/**
+	 * In-place Cholesky factorization G = L L^T of the m x m matrix; the lower
+	 * triangle receives L
+	 *
+	 * @return false if the matrix is not positive definite
+	 */
+	boolean cholesky(int m) {
+		double[] a = matrix;
+		for (int j = 0; j < m; j++) {
+			double d = a[j * m + j];
+			for (int p = 0; p < j; p++)
+				d -= a[j * m + p] * a[j * m + p];
+			if (!(d > 0))
+				return false;
+			d = Math.sqrt(d);
+			a[j * m + j] = d;
+			for (int i = j + 1; i < m; i++) {
+				double s = a[i * m + j];
+				for (int p = 0; p < j; p++)
+					s -= a[i * m + p] * a[j * m + p];
+				a[i * m + j] = s / d;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Solve L L^T x = vector in place, after cholesky(m)
+	 */
+	void choleskySolve(int m) {
+		double[] a = matrix;
+		double[] x = vector;
+		for (int i = 0; i < m; i++) {
+			double s = x[i];
+			for (int p = 0; p < i; p++)
+				s -= a[i * m + p] * x[p];
+			x[i] = s / a[i * m + i];
+		}
+		for (int i = m - 1; i >= 0; i--) {
+			double s = x[i];
+			for (int p = i + 1; p < m; p++)
+				s -= a[p * m + i] * x[p];
+			x[i] = s / a[i * m + i];
+		}
+	}
+
+	/**
+	 * In-place LU factorization with partial pivoting of the m x m matrix
+	 *
+	 * @return its determinant
+	 */
+	double determinant(int m) {
+		double[] a = matrix;
+		double det = 1;
+		for (int j = 0; j < m; j++) {
+			int pivot = j;
+			for (int i = j + 1; i < m; i++)
+				if (Math.abs(a[i * m + j]) > Math.abs(a[pivot * m + j]))
+					pivot = i;
+			if (a[pivot * m + j] == 0)
+				return 0;
+			if (pivot != j) {
+				for (int c = 0; c < m; c++) {
+					double t = a[j * m + c];
+					a[j * m + c] = a[pivot * m + c];
+					a[pivot * m + c] = t;
+				}
+				det = -det;
+			}
+			double d = a[j * m + j];
+			det *= d;
+			for (int i = j + 1; i < m; i++) {
+				double f = a[i * m + j] / d;
+				for (int c = j + 1; c < m; c++)
+					a[i * m + c] -= f * a[j * m + c];
+			}
+		}
+		return det;
+	}
+}
@@ -0,0 +1,183 @@
+package jdec.mesh;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import jdec.util.Parallel;
+
+/**
+ * A labeling of items (e.g., the elements of a mesh or the simplices of a
+ * complex) by connected component. Components are numbered by increasing
+ * smallest item, so that the labeling does not depend on the number of
+ * threads used to compute it.
+ *
+ */
+public class Components {
+
+	private final int[] labels;
+	private final int count;
+
+	private Components(int[] labels, int count) {
+		this.labels = labels;
+		this.count = count;
+	}
+
+	/**
+	 * Label the connected components of a set of items, where all the targets
+	 * of each source of an incidence are connected, e.g., the elements
+	 * containing each face of a mesh. The sources are processed in parallel
+	 * with a lock-free union-find: roots are linked by compare-and-set, always
+	 * from the larger index to the smaller one, and paths are halved during
+	 * the searches.
+	 *
+	 * @param connections
+	 * @param nItems
+	 *            the number of items, all targets being in [0, nItems)
+	 * @param executor
+	 *            the executor, or null to label in the calling thread
+	 * @return
+	 */
+	public static Components of(final Incidence connections, int nItems,
+			ExecutorService executor) {
+		final AtomicIntegerArray parent = new AtomicIntegerArray(nItems);
+		for (int i = 0; i < nItems; i++)
+			parent.set(i, i);
+		int chunks = Parallel.chunks(executor);
+		Parallel.forRange(executor, connections.size(), chunks,
+				new Parallel.Range() {
+					public void run(int chunk, int from, int to) {
+						int[] targets = connections.targets();
+						for (int s = from; s < to; s++)
+							for (int k = connections.start(s) + 1; k < connections
+									.end(s); k++)
+								union(parent, targets[k - 1], targets[k]);
+					}
+				});
+		// the root of each component is its smallest item
+		final int[] roots = new int[nItems];
+		Parallel.forRange(executor, nItems, chunks, new Parallel.Range() {
+			public void run(int chunk, int from, int to) {
+				for (int i = from; i < to; i++)
+					roots[i] = find(parent, i);
+			}
+		});
+		int count = 0;
+		for (int i = 0; i < nItems; i++)
+			roots[i] = roots[i] == i ? count++ : roots[roots[i]];
+		return new Components(roots, count);
+	}
+
+	private static int find(AtomicIntegerArray parent, int i) {
+		while (true) {
+			int p = parent.get(i);
+			if (p == i)
+				return i;
+			int g = parent.get(p);
+			if (g == p)
+				return p;
+			// path halving; a failed update only means another thread
+			// shortened the path already
+			parent.compareAndSet(i, p, g);
+			i = g;
+		}
+	}
+
+	private static void union(AtomicIntegerArray parent, int a, int b) {
+		while (true) {
+			a = find(parent, a);
+			b = find(parent, b);
+			if (a == b)
+				return;
+			if (a < b) {
+				int t = a;
+				a = b;
+				b = t;
+			}
+			if (parent.compareAndSet(a, a, b))
+				return;
+		}
+	}
+
+	/**
+	 * Label faces from the labels of their cofaces: each face gets the
+	 * smallest label of the items containing it. Faces shared by several
+	 * components (e.g., a vertex where two components touch) are thus
+	 * assigned to one of them.
+	 *
+	 * @param cofaces
+	 *            the items (labeled by this object) containing each face
+	 * @param executor
+	 *            the executor, or null to label in the calling thread
+	 * @return the labeling of the faces, with the same components
+	 */
+	public Components faces(final Incidence cofaces, ExecutorService executor) {
+		final int[] faceLabels = new int[cofaces.size()];
+		Parallel.forRange(executor, faceLabels.length,
+				Parallel.chunks(executor), new Parallel.Range() {
+					public void run(int chunk, int from, int to) {
+						int[] targets = cofaces.targets();
+						for (int f = from; f < to; f++) {
+							int min = Integer.MAX_VALUE;
+							for (int k = cofaces.start(f); k < cofaces.end(f); k++)
+								min = Math.min(min, labels[targets[k]]);
+							faceLabels[f] = min == Integer.MAX_VALUE ? -1
+									: min;
+						}
+					}
+				});
+		return new Components(faceLabels, count);
+	}
+
+	/**
+	 * @return the number of components
+	 */
+	public int count() {
+		return count;
+	}
+
+	/**
+	 * @param i
+	 * @return the component of item i
+	 */
+	public int label(int i) {
+		return labels[i];
+	}
+
+	/**
+	 * The backing array of labels, one per item, in [0, count()) (-1 for
+	 * faces without cofaces)
+	 *
+	 * @return
+	 */
+	public int[] labels() {
+		return labels;
+	}
+
+	/**
+	 * @return the items of each component, in increasing order
+	 */
+	public Incidence members() {
+		int[] offsets = new int[count + 1];
+		int n = 0;
+		for (int label : labels)
+			if (label >= 0) {
+				offsets[label + 1]++;
+				n++;
+			}
+		for (int c = 0; c < count; c++)
+			offsets[c + 1] += offsets[c];
+		int[] next = new int[count];
+		System.arraycopy(offsets, 0, next, 0, count);
+		int[] items = new int[n];
+		for (int i = 0; i < labels.length; i++)
+			if (labels[i] >= 0)
+				items[next[labels[i]]++] = i;
+		return new Incidence(offsets, items);
+	}
+
+	@Override
+	public String toString() {
+		return "Components(" + labels.length + " items, " + count
+				+ " components)";
+	}
+}
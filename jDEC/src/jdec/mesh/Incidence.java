@@ -0,0 +1,148 @@
+package jdec.mesh;
+
+import java.nio.IntBuffer;
+
+/**
+ * A compressed (CSR) incidence relation between two sets of indices, e.g.,
+ * faces and the elements containing them. The targets of source i are found
+ * in <code>targets[offsets[i], offsets[i + 1])</code>.
+ *
+ * As for {@link SimplexTable}, none of the accessors except
+ * {@link #view(int)} allocate.
+ *
+ */
+public class Incidence {
+
+	private final int[] offsets;
+	private final int[] targets;
+
+	/**
+	 * Wraps existing arrays; no copy is made.
+	 *
+	 * @param offsets
+	 *            array of (number of sources + 1) non-decreasing positions in
+	 *            targets, starting at 0
+	 * @param targets
+	 */
+	public Incidence(int[] offsets, int[] targets) {
+		if (offsets.length == 0 || offsets[0] != 0
+				|| offsets[offsets.length - 1] > targets.length)
+			throw new IllegalArgumentException("Invalid offsets");
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/**
+	 * Build the incidence from a list of (source, target) pairs with a
+	 * counting sort. The targets of each source are kept in the order of the
+	 * pairs.
+	 *
+	 * @param nSources
+	 * @param sources
+	 * @param targets
+	 * @param count
+	 *            the number of pairs
+	 * @return
+	 */
+	public static Incidence fromPairs(int nSources, int[] sources,
+			int[] targets, int count) {
+		int[] offsets = new int[nSources + 1];
+		for (int k = 0; k < count; k++)
+			offsets[sources[k] + 1]++;
+		for (int i = 0; i < nSources; i++)
+			offsets[i + 1] += offsets[i];
+		int[] next = new int[nSources];
+		System.arraycopy(offsets, 0, next, 0, nSources);
+		int[] sorted = new int[count];
+		for (int k = 0; k < count; k++)
+			sorted[next[sources[k]]++] = targets[k];
+		return new Incidence(offsets, sorted);
+	}
+
+	/**
+	 * @return the number of sources
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * @param i
+	 * @return the number of targets of source i
+	 */
+	public int degree(int i) {
+		return offsets[i + 1] - offsets[i];
+	}
+
+	/**
+	 * @param i
+	 * @return the position of the first target of source i in targets()
+	 */
+	public int start(int i) {
+		return offsets[i];
+	}
+
+	/**
+	 * @param i
+	 * @return the position after the last target of source i in targets()
+	 */
+	public int end(int i) {
+		return offsets[i + 1];
+	}
+
+	/**
+	 * @param i
+	 * @param k
+	 * @return the k-th target of source i
+	 */
+	public int get(int i, int k) {
+		return targets[offsets[i] + k];
+	}
+
+	/**
+	 * Copy the targets of source i into dst, starting at offset
+	 *
+	 * @param i
+	 * @param dst
+	 * @param offset
+	 * @return the number of targets copied
+	 */
+	public int copy(int i, int[] dst, int offset) {
+		int n = degree(i);
+		System.arraycopy(targets, offsets[i], dst, offset, n);
+		return n;
+	}
+
+	/**
+	 * @param i
+	 * @return a read-only view of the targets of source i
+	 */
+	public IntBuffer view(int i) {
+		return IntBuffer.wrap(targets, offsets[i], degree(i)).slice()
+				.asReadOnlyBuffer();
+	}
+
+	/**
+	 * The backing array of offsets, of length size() + 1
+	 *
+	 * @return
+	 */
+	public int[] offsets() {
+		return offsets;
+	}
+
+	/**
+	 * The backing array of targets
+	 *
+	 * @return
+	 */
+	public int[] targets() {
+		return targets;
+	}
+
+	@Override
+	public String toString() {
+		return "Incidence(" + size() + " sources, " + offsets[size()]
+				+ " targets)";
+	}
+}
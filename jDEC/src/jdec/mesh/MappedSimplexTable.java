@@ -0,0 +1,50 @@
+package jdec.mesh;
+
+import jdec.util.MappedIntArray;
+
+/**
+ * A read-only simplex table whose entries live in a memory-mapped file
+ * rather than in the heap. Searches and row copies work as for any other
+ * table, but there is no backing array: {@link #data()} and
+ * {@link #set(int, int, int)} are not supported, and {@link #hasArray()} is
+ * false.
+ *
+ */
+public class MappedSimplexTable extends SimplexTable {
+
+	private final MappedIntArray entries;
+
+	public MappedSimplexTable(MappedIntArray entries, int size, int stride) {
+		super(size, stride, null);
+		if (entries.length() < size * stride)
+			throw new IllegalArgumentException("Invalid table size " + size
+					+ "x" + stride + " for " + entries.length() + " entries");
+		this.entries = entries;
+	}
+
+	@Override
+	public int[] data() {
+		throw new UnsupportedOperationException(
+				"A mapped table has no backing array");
+	}
+
+	@Override
+	protected int entry(int position) {
+		return entries.get(position);
+	}
+
+	@Override
+	public void set(int row, int column, int value) {
+		throw new UnsupportedOperationException("A mapped table is read-only");
+	}
+
+	@Override
+	public void copyRow(int row, int[] dst, int offset) {
+		entries.get(offset(row), dst, offset, stride());
+	}
+
+	@Override
+	public String toString() {
+		return "MappedSimplexTable(" + size() + "x" + stride() + ")";
+	}
+}
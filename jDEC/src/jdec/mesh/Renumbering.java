@@ -0,0 +1,344 @@
+package jdec.mesh;
+
+import it.unimi.dsi.fastutil.longs.LongArrays;
+
+import java.util.Arrays;
+
+/**
+ * A renumbering of the vertices and elements of a mesh which improves the
+ * locality of the data attached to them: vertices which are close in the mesh
+ * get close indices, and so do the simplices of a complex built from the
+ * renumbered mesh, since they are sorted by vertex indices. Products with the
+ * boundary and Hodge operators then access memory in a more regular pattern.
+ *
+ * The permutations are kept, so that data attached to the original mesh can
+ * be mapped to the renumbered one, and back.
+ *
+ */
+public class Renumbering {
+
+	public enum Ordering {
+		/**
+		 * Reverse Cuthill-McKee ordering of the graph of the edges, which
+		 * reduces the bandwidth of the vertex adjacency matrix
+		 */
+		REVERSE_CUTHILL_MCKEE,
+		/**
+		 * Order of the vertices along a Morton (Z-order) space-filling curve
+		 */
+		MORTON
+	}
+
+	private final SimplicialMesh mesh;
+	private final int[] vertexNewToOld;
+	private final int[] vertexOldToNew;
+	private final int[] elementNewToOld;
+	private final int[] elementOldToNew;
+
+	/**
+	 * Renumber the vertices of a mesh with the given ordering, then its
+	 * elements by increasing smallest (new) vertex index
+	 *
+	 * @param mesh
+	 * @param ordering
+	 */
+	public Renumbering(SimplicialMesh mesh, Ordering ordering) {
+		double[][] points = mesh.getVertices();
+		int[][] elements = mesh.getElements();
+		switch (ordering) {
+		case REVERSE_CUTHILL_MCKEE:
+			vertexNewToOld = reverseCuthillMcKee(mesh);
+			break;
+		case MORTON:
+			vertexNewToOld = morton(points);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown ordering " + ordering);
+		}
+		vertexOldToNew = inverse(vertexNewToOld);
+
+		// counting sort of the elements by smallest new vertex
+		int[] first = new int[elements.length];
+		int[] count = new int[points.length + 1];
+		for (int e = 0; e < elements.length; e++) {
+			int min = Integer.MAX_VALUE;
+			for (int v : elements[e])
+				min = Math.min(min, vertexOldToNew[v]);
+			first[e] = min;
+			count[min + 1]++;
+		}
+		for (int v = 0; v < points.length; v++)
+			count[v + 1] += count[v];
+		elementNewToOld = new int[elements.length];
+		for (int e = 0; e < elements.length; e++)
+			elementNewToOld[count[first[e]]++] = e;
+		elementOldToNew = inverse(elementNewToOld);
+
+		double[][] newPoints = new double[points.length][];
+		for (int v = 0; v < points.length; v++)
+			newPoints[v] = points[vertexNewToOld[v]];
+		int[][] newElements = new int[elements.length][];
+		for (int e = 0; e < elements.length; e++) {
+			int[] element = elements[elementNewToOld[e]];
+			newElements[e] = new int[element.length];
+			// the order of the vertices, hence the orientation, is kept
+			for (int c = 0; c < element.length; c++)
+				newElements[e][c] = vertexOldToNew[element[c]];
+		}
+		this.mesh = new SimplicialMesh(newPoints, newElements);
+	}
+
+	/**
+	 * @return the renumbered mesh
+	 */
+	public SimplicialMesh mesh() {
+		return mesh;
+	}
+
+	/**
+	 * @return the original index of each vertex of the renumbered mesh
+	 */
+	public int[] vertexNewToOld() {
+		return vertexNewToOld;
+	}
+
+	/**
+	 * @return the new index of each vertex of the original mesh
+	 */
+	public int[] vertexOldToNew() {
+		return vertexOldToNew;
+	}
+
+	/**
+	 * @return the original index of each element of the renumbered mesh
+	 */
+	public int[] elementNewToOld() {
+		return elementNewToOld;
+	}
+
+	/**
+	 * @return the new index of each element of the original mesh
+	 */
+	public int[] elementOldToNew() {
+		return elementOldToNew;
+	}
+
+	/**
+	 * Permute values attached to vertices or elements
+	 *
+	 * @param values
+	 * @param newToOld
+	 *            one of the permutations of this renumbering, or its inverse
+	 *            to map values back
+	 * @return the values in the new order
+	 */
+	public static double[] permute(double[] values, int[] newToOld) {
+		double[] permuted = new double[newToOld.length];
+		for (int i = 0; i < newToOld.length; i++)
+			permuted[i] = values[newToOld[i]];
+		return permuted;
+	}
+
+	/**
+	 * Reverse Cuthill-McKee ordering of the vertices of a mesh. Each
+	 * connected component is traversed breadth-first from a
+	 * pseudo-peripheral vertex, visiting the neighbors of each vertex by
+	 * increasing degree; the resulting order is then reversed. Vertices
+	 * which belong to no element come last.
+	 *
+	 * @param mesh
+	 * @return the original index of each vertex in the new order
+	 */
+	public static int[] reverseCuthillMcKee(SimplicialMesh mesh) {
+		Incidence graph = vertexGraph(mesh);
+		int n = graph.size();
+		int[] order = new int[n];
+		int[] level = new int[n];
+		boolean[] visited = new boolean[n];
+		int[] neighbors = new int[maxDegree(graph)];
+		int size = 0;
+		for (int seed = 0; seed < n; seed++) {
+			if (visited[seed] || graph.degree(seed) == 0)
+				continue;
+			int root = pseudoPeripheral(graph, seed, order, size, level);
+			visited[root] = true;
+			order[size++] = root;
+			for (int head = size - 1; head < size; head++) {
+				int v = order[head];
+				int count = 0;
+				for (int k = graph.start(v); k < graph.end(v); k++) {
+					int w = graph.targets()[k];
+					if (!visited[w]) {
+						visited[w] = true;
+						// insertion by increasing degree, ties by index
+						int i = count++;
+						while (i > 0
+								&& (graph.degree(neighbors[i - 1]) > graph
+										.degree(w) || (graph
+										.degree(neighbors[i - 1]) == graph
+										.degree(w) && neighbors[i - 1] > w))) {
+							neighbors[i] = neighbors[i - 1];
+							i--;
+						}
+						neighbors[i] = w;
+					}
+				}
+				System.arraycopy(neighbors, 0, order, size, count);
+				size += count;
+			}
+		}
+		// reverse the traversal, isolated vertices go last
+		for (int i = 0, j = size - 1; i < j; i++, j--) {
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		for (int v = 0; v < n; v++)
+			if (!visited[v])
+				order[size++] = v;
+		return order;
+	}
+
+	/**
+	 * Find a vertex of (nearly) maximal eccentricity in the component of
+	 * start, by repeated breadth-first searches from the vertex of minimal
+	 * degree in the last level
+	 *
+	 * @param queue
+	 *            scratch space, used from position offset
+	 * @param level
+	 *            scratch space of one entry per vertex
+	 */
+	private static int pseudoPeripheral(Incidence graph, int start,
+			int[] queue, int offset, int[] level) {
+		int root = start;
+		int eccentricity = -1;
+		while (true) {
+			// breadth-first search from root, levels are stored + 1 so that
+			// 0 means not visited
+			queue[offset] = root;
+			level[root] = 1;
+			int size = offset + 1;
+			for (int head = offset; head < size; head++) {
+				int v = queue[head];
+				for (int k = graph.start(v); k < graph.end(v); k++) {
+					int w = graph.targets()[k];
+					if (level[w] == 0) {
+						level[w] = level[v] + 1;
+						queue[size++] = w;
+					}
+				}
+			}
+			int last = level[queue[size - 1]];
+			int candidate = queue[size - 1];
+			for (int i = size - 1; i >= offset && level[queue[i]] == last; i--)
+				if (graph.degree(queue[i]) < graph.degree(candidate))
+					candidate = queue[i];
+			for (int i = offset; i < size; i++)
+				level[queue[i]] = 0;
+			if (last - 1 <= eccentricity)
+				return root;
+			eccentricity = last - 1;
+			root = candidate;
+		}
+	}
+
+	/**
+	 * @return the vertex adjacency of a mesh, i.e., the graph of its edges,
+	 *         with the neighbors of each vertex in increasing order
+	 */
+	static Incidence vertexGraph(SimplicialMesh mesh) {
+		int n = mesh.getVertices().length;
+		int[][] elements = mesh.getElements();
+		Incidence vertexElements = mesh.vertexToElements();
+		int[] mark = new int[n];
+		Arrays.fill(mark, -1);
+		int[] offsets = new int[n + 1];
+		for (int v = 0; v < n; v++)
+			offsets[v + 1] = offsets[v]
+					+ neighbors(v, elements, vertexElements, mark, null, 0);
+		Arrays.fill(mark, -1);
+		int[] targets = new int[offsets[n]];
+		for (int v = 0; v < n; v++) {
+			neighbors(v, elements, vertexElements, mark, targets, offsets[v]);
+			Arrays.sort(targets, offsets[v], offsets[v + 1]);
+		}
+		return new Incidence(offsets, targets);
+	}
+
+	/**
+	 * Collect the vertices sharing an element with v into dst (if not null)
+	 *
+	 * @param mark
+	 *            the last vertex for which each vertex was collected
+	 * @return the number of neighbors
+	 */
+	private static int neighbors(int v, int[][] elements,
+			Incidence vertexElements, int[] mark, int[] dst, int offset) {
+		int count = 0;
+		for (int k = vertexElements.start(v); k < vertexElements.end(v); k++)
+			for (int w : elements[vertexElements.targets()[k]])
+				if (w != v && mark[w] != v) {
+					mark[w] = v;
+					if (dst != null)
+						dst[offset + count] = w;
+					count++;
+				}
+		return count;
+	}
+
+	/**
+	 * Order of points along a Morton (Z-order) curve: the coordinates are
+	 * quantized on a regular grid over the bounding box, and the bits of the
+	 * grid coordinates are interleaved into a single key.
+	 *
+	 * @param points
+	 * @return the original index of each point in the new order
+	 */
+	public static int[] morton(double[][] points) {
+		int n = points.length;
+		int dim = n == 0 ? 1 : Math.max(points[0].length, 1);
+		int bits = Math.min(63 / dim, 31);
+		double[] min = new double[dim];
+		double[] max = new double[dim];
+		Arrays.fill(min, Double.POSITIVE_INFINITY);
+		Arrays.fill(max, Double.NEGATIVE_INFINITY);
+		for (double[] p : points)
+			for (int d = 0; d < p.length; d++) {
+				min[d] = Math.min(min[d], p[d]);
+				max[d] = Math.max(max[d], p[d]);
+			}
+		long cells = (1L << bits) - 1;
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			long key = 0;
+			for (int d = 0; d < points[i].length; d++) {
+				double extent = max[d] - min[d];
+				long cell = extent > 0 ? (long) ((points[i][d] - min[d])
+						/ extent * cells) : 0;
+				for (int b = 0; b < bits; b++)
+					key |= ((cell >>> b) & 1L) << (b * dim + d);
+			}
+			keys[i] = key;
+		}
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		LongArrays.radixSortIndirect(order, keys, true);
+		return order;
+	}
+
+	private static int maxDegree(Incidence graph) {
+		int max = 0;
+		for (int v = 0; v < graph.size(); v++)
+			max = Math.max(max, graph.degree(v));
+		return max;
+	}
+
+	private static int[] inverse(int[] permutation) {
+		int[] inverse = new int[permutation.length];
+		for (int i = 0; i < permutation.length; i++)
+			inverse[permutation[i]] = i;
+		return inverse;
+	}
+}
@@ -31,8 +31,7 @@ public class Simplex implements Comparable<Simplex> {
 	public Simplex(int[] array, int parity) {
 		this.arrayDim = array.length;
 		this.array = Arrays.copyOf(array, arrayDim);
-		Arrays.sort(this.array);
-		this.parity = (parity + Parity.relativeParity(this.array, array)) % 2;
+		this.parity = (parity + Parity.canonicalize(this.array, 0, arrayDim)) % 2;
 		this.comparator = LexicographicalComparator.getComparator(arrayDim);
 	}
 
@@ -52,10 +51,26 @@ public class Simplex implements Comparable<Simplex> {
 		return array.length - 1;
 	}
 
+	/**
+	 * @return the vertices in increasing order, in a new array; the
+	 *         orientation of the simplex is given by {@link #parity()}
+	 */
+	public int[] vertices() {
+		return Arrays.copyOf(array, arrayDim);
+	}
+
+	/**
+	 * @return the parity of the simplex with respect to its sorted vertices
+	 */
+	public int parity() {
+		return parity;
+	}
+
 	public int[] toArray() {
 		int[] arrayVersion = Arrays.copyOf(array, arrayDim);
-		if (parity % 2 != 0) {
-			// change array parity by swapping first two elements
+		if (parity % 2 != 0 && arrayDim > 1) {
+			// change array parity by swapping first two elements (the
+			// orientation of a single vertex cannot be encoded this way)
 			arrayVersion[0] ^= arrayVersion[1];
 			arrayVersion[1] ^= arrayVersion[0];
 			arrayVersion[0] ^= arrayVersion[1];
@@ -0,0 +1,336 @@
+package jdec.mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import jdec.util.Parallel;
+
+/**
+ * Sorting algorithms for the rows of a {@link SimplexTable}. The rows are not
+ * moved: the algorithms produce the permutation that sorts the table, so that
+ * any data attached to the rows can be traversed in sorted order as well.
+ *
+ * All the sorts are stable, i.e., equal rows keep their relative order.
+ *
+ */
+public class SimplexSort {
+
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+	private static final int RADIX_SORT_THRESHOLD = 1 << 12;
+	private static final int RADIX_BITS = 16;
+
+	private SimplexSort() {
+	}
+
+	/**
+	 * Compute the permutation that sorts the rows of a table in
+	 * lexicographical order. Large tables of non-negative vertex indices are
+	 * sorted with a radix sort, all the others with a merge sort.
+	 *
+	 * @param table
+	 * @return an array p such that rows p[0], p[1], ... are sorted
+	 */
+	public static int[] sortedOrder(SimplexTable table) {
+		int[] order = new int[table.size()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		sort(table, order, 0, order.length, maxEntry(table, 0, table.size()),
+				new int[order.length]);
+		return order;
+	}
+
+	/**
+	 * Compute the permutation that sorts the rows of a table in
+	 * lexicographical order, using the threads of an executor. The table is
+	 * split in chunks which are sorted independently and then merged pairwise;
+	 * since all the steps are stable, the result is the same as that of
+	 * {@link #sortedOrder(SimplexTable)}.
+	 *
+	 * @param table
+	 * @param executor
+	 *            the executor, or null to sort in the calling thread
+	 * @return an array p such that rows p[0], p[1], ... are sorted
+	 */
+	public static int[] sortedOrder(final SimplexTable table,
+			ExecutorService executor) {
+		final int n = table.size();
+		final int chunks = Parallel.chunks(executor);
+		if (executor == null || n < RADIX_SORT_THRESHOLD || chunks < 2)
+			return sortedOrder(table);
+
+		final int[] order = new int[n];
+		final int[] buffer = new int[n];
+		final int[] max = new int[chunks];
+		Parallel.forRange(executor, n, chunks, new Parallel.Range() {
+			public void run(int chunk, int from, int to) {
+				for (int i = from; i < to; i++)
+					order[i] = i;
+				max[chunk] = maxEntry(table, from, to);
+			}
+		});
+		int maxValue = 0;
+		for (int m : max)
+			maxValue = m < 0 || maxValue < 0 ? -1 : Math.max(maxValue, m);
+		final int maxEntry = maxValue;
+		Parallel.forRange(executor, n, chunks, new Parallel.Range() {
+			public void run(int chunk, int from, int to) {
+				sort(table, order, from, to, maxEntry, buffer);
+			}
+		});
+
+		// merge the sorted chunks pairwise, bouncing between order and buffer
+		int[] src = order;
+		int[] dst = buffer;
+		for (int width = 1; width < chunks; width *= 2) {
+			List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+			for (int c = 0; c < chunks; c += 2 * width) {
+				int lo = Parallel.chunkStart(n, chunks, c);
+				int mid = Parallel.chunkStart(n, chunks,
+						Math.min(c + width, chunks));
+				int hi = Parallel.chunkStart(n, chunks,
+						Math.min(c + 2 * width, chunks));
+				// split each merge in parts proportional to its length
+				int parts = Math.max(1, (int) ((long) chunks * (hi - lo) / n));
+				addMergeTasks(tasks, table, src, lo, mid, hi, dst, parts);
+			}
+			Parallel.invokeAll(executor, tasks);
+			int[] t = src;
+			src = dst;
+			dst = t;
+		}
+		if (src != order)
+			System.arraycopy(src, 0, order, 0, n);
+		return order;
+	}
+
+	/**
+	 * Sort order[from, to) with a radix sort if the range is large and the
+	 * entries of the table are non-negative, with a merge sort otherwise
+	 */
+	private static void sort(SimplexTable table, int[] order, int from,
+			int to, int maxEntry, int[] buffer) {
+		if (to - from >= RADIX_SORT_THRESHOLD && maxEntry >= 0)
+			radixSort(table, order, from, to, maxEntry, buffer);
+		else
+			mergeSort(table, order, from, to, buffer);
+	}
+
+	/**
+	 * @return the largest entry in rows [from, to) of the table, or -1 if any
+	 *         entry is negative or if the table has no backing array (the radix
+	 *         sort reads it directly)
+	 */
+	private static int maxEntry(SimplexTable table, int from, int to) {
+		if (!table.hasArray())
+			return -1;
+		int[] data = table.data();
+		int max = 0;
+		for (int i = table.offset(from); i < table.offset(to); i++) {
+			if (data[i] < 0)
+				return -1;
+			if (data[i] > max)
+				max = data[i];
+		}
+		return max;
+	}
+
+	/**
+	 * Split the stable merge of src[lo, mid) and src[mid, hi) into dst[lo, hi)
+	 * in independent tasks, each one producing a contiguous part of the
+	 * output. The split points are found by binary search (co-ranking).
+	 */
+	private static void addMergeTasks(List<Callable<Object>> tasks,
+			final SimplexTable table, final int[] src, final int lo,
+			final int mid, final int hi, final int[] dst, int parts) {
+		int previousOut = lo;
+		int previousA = lo;
+		for (int p = 1; p <= parts; p++) {
+			final int out = lo + (int) ((long) (hi - lo) * p / parts);
+			final int a = p == parts ? mid : lo
+					+ coRank(table, src, lo, mid, hi, out - lo);
+			final int fromOut = previousOut;
+			final int fromA = previousA;
+			final int fromB = mid + (fromOut - lo) - (fromA - lo);
+			final int toB = mid + (out - lo) - (a - lo);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					mergeRuns(table, src, fromA, a, src, fromB, toB, dst,
+							fromOut);
+					return null;
+				}
+			});
+			previousOut = out;
+			previousA = a;
+		}
+	}
+
+	/**
+	 * @return the number of elements of the first run src[lo, mid) among the
+	 *         first k elements of the stable merge of src[lo, mid) and src[mid,
+	 *         hi)
+	 */
+	private static int coRank(SimplexTable table, int[] src, int lo,
+			int mid, int hi, int k) {
+		int m = mid - lo;
+		int n = hi - mid;
+		int i = Math.min(k, m);
+		int j = k - i;
+		int iLow = Math.max(0, k - n);
+		int jLow = Math.max(0, k - m);
+		while (true) {
+			if (i > 0 && j < n
+					&& table.compareRows(src[lo + i - 1], src[mid + j]) > 0) {
+				// too many elements taken from the first run
+				int delta = (i - iLow + 1) / 2;
+				jLow = j;
+				i -= delta;
+				j += delta;
+			} else if (j > 0 && i < m
+					&& table.compareRows(src[mid + j - 1], src[lo + i]) >= 0) {
+				// too many elements taken from the second run
+				int delta = (j - jLow + 1) / 2;
+				iLow = i;
+				i += delta;
+				j -= delta;
+			} else
+				return i;
+		}
+	}
+
+	/**
+	 * Stable LSD radix sort of order, comparing the rows of the table whose
+	 * indices are stored in order. The columns are processed from the last to
+	 * the first, each one with one or more counting sort passes on digits of
+	 * (at most) RADIX_BITS bits. The running time is linear in the size of the
+	 * table.
+	 *
+	 * @param table
+	 * @param order
+	 * @param maxValue
+	 *            an upper bound for the (non-negative) entries of the table
+	 */
+	public static void radixSort(SimplexTable table, int[] order, int maxValue) {
+		radixSort(table, order, 0, order.length, maxValue,
+				new int[order.length]);
+	}
+
+	/**
+	 * Stable LSD radix sort of order[from, to)
+	 *
+	 * @param table
+	 * @param order
+	 * @param from
+	 * @param to
+	 * @param maxValue
+	 *            an upper bound for the (non-negative) entries of the table
+	 * @param buffer
+	 *            scratch space of at least to entries; only [from, to) is used
+	 */
+	public static void radixSort(SimplexTable table, int[] order, int from,
+			int to, int maxValue, int[] buffer) {
+		if (!table.hasArray()) {
+			// same stable order, through the row comparisons
+			mergeSort(table, order, from, to, buffer);
+			return;
+		}
+		int stride = table.stride();
+		int[] data = table.data();
+		int bits = 32 - Integer.numberOfLeadingZeros(maxValue);
+		// split each column into the smallest number of balanced digits
+		int digits = Math.max(1, (bits + RADIX_BITS - 1) / RADIX_BITS);
+		int digitBits = Math.max(1, (bits + digits - 1) / digits);
+		int mask = (1 << digitBits) - 1;
+		int[] count = new int[mask + 2];
+		int[] src = order;
+		int[] dst = buffer;
+		for (int c = stride - 1; c >= 0; c--)
+			for (int d = 0, shift = 0; d < digits; d++, shift += digitBits) {
+				Arrays.fill(count, 0);
+				count[0] = from;
+				for (int q = from; q < to; q++)
+					count[((data[src[q] * stride + c] >>> shift) & mask) + 1]++;
+				for (int b = 1; b < count.length; b++)
+					count[b] += count[b - 1];
+				for (int q = from; q < to; q++) {
+					int r = src[q];
+					dst[count[(data[r * stride + c] >>> shift) & mask]++] = r;
+				}
+				int[] t = src;
+				src = dst;
+				dst = t;
+			}
+		if (src != order)
+			System.arraycopy(src, from, order, from, to - from);
+	}
+
+	/**
+	 * Stable merge sort of order[from, to), comparing the rows of the table
+	 * whose indices are stored in order
+	 *
+	 * @param table
+	 * @param order
+	 * @param from
+	 * @param to
+	 * @param buffer
+	 *            scratch space of at least to entries; only [from, to) is used
+	 */
+	public static void mergeSort(SimplexTable table, int[] order, int from,
+			int to, int[] buffer) {
+		int n = to - from;
+		// sort short runs with insertion sort
+		for (int start = from; start < to; start += INSERTION_SORT_THRESHOLD)
+			insertionSort(table, order, start,
+					Math.min(start + INSERTION_SORT_THRESHOLD, to));
+
+		// merge runs bottom-up, bouncing between order and buffer
+		int[] src = order;
+		int[] dst = buffer;
+		for (int width = INSERTION_SORT_THRESHOLD; width < n; width *= 2) {
+			for (int lo = from; lo < to; lo += 2 * width) {
+				int mid = Math.min(lo + width, to);
+				int hi = Math.min(lo + 2 * width, to);
+				mergeRuns(table, src, lo, mid, src, mid, hi, dst, lo);
+			}
+			int[] t = src;
+			src = dst;
+			dst = t;
+		}
+		if (src != order)
+			System.arraycopy(src, from, order, from, n);
+	}
+
+	/**
+	 * Stable merge of the sorted runs a[aFrom, aTo) and b[bFrom, bTo) into
+	 * dst, starting at dstPos. On ties, elements of the first run come first.
+	 */
+	private static void mergeRuns(SimplexTable table, int[] a, int aFrom,
+			int aTo, int[] b, int bFrom, int bTo, int[] dst, int dstPos) {
+		int i = aFrom;
+		int j = bFrom;
+		while (i < aTo && j < bTo)
+			if (table.compareRows(b[j], a[i]) < 0)
+				dst[dstPos++] = b[j++];
+			else
+				dst[dstPos++] = a[i++];
+		while (i < aTo)
+			dst[dstPos++] = a[i++];
+		while (j < bTo)
+			dst[dstPos++] = b[j++];
+	}
+
+	private static void insertionSort(SimplexTable table, int[] order,
+			int from, int to) {
+		for (int i = from + 1; i < to; i++) {
+			int x = order[i];
+			int j = i - 1;
+			while (j >= from && table.compareRows(order[j], x) > 0) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = x;
+		}
+	}
+}
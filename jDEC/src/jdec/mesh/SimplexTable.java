@@ -0,0 +1,328 @@
+package jdec.mesh;
+
+import java.util.Arrays;
+
+/**
+ * A table of simplices with the same number of vertices, stored row by row in
+ * a single contiguous int array. The vertices of the i-th simplex are found in
+ * <code>data[i * stride, (i + 1) * stride)</code>, where the stride is the
+ * number of vertices per simplex.
+ *
+ * None of the accessors allocate, so a table can be traversed without
+ * producing garbage.
+ *
+ * A {@link MappedSimplexTable} keeps the entries outside the heap; such
+ * tables have no backing array and are read-only.
+ *
+ */
+public class SimplexTable {
+
+	private final int[] data;
+	private final int size;
+	private final int stride;
+
+	/**
+	 * Creates an empty table (filled with zeros) of the given size
+	 *
+	 * @param size
+	 *            number of simplices
+	 * @param stride
+	 *            number of vertices per simplex
+	 */
+	public SimplexTable(int size, int stride) {
+		this(new int[size * stride], size, stride);
+	}
+
+	/**
+	 * Wraps an existing array; no copy is made.
+	 *
+	 * @param data
+	 *            array holding at least size * stride entries
+	 * @param size
+	 *            number of simplices
+	 * @param stride
+	 *            number of vertices per simplex
+	 */
+	public SimplexTable(int[] data, int size, int stride) {
+		if (size < 0 || stride < 0 || data.length < size * stride)
+			throw new IllegalArgumentException("Invalid table size " + size
+					+ "x" + stride + " for an array of length " + data.length);
+		this.data = data;
+		this.size = size;
+		this.stride = stride;
+	}
+
+	/**
+	 * Constructor for tables without a backing array, which must override
+	 * entry(int) and copyRow(int, int[], int); the last argument only
+	 * distinguishes this constructor from the public one
+	 */
+	SimplexTable(int size, int stride, Void noData) {
+		this.data = null;
+		this.size = size;
+		this.stride = stride;
+	}
+
+	/**
+	 * Copies an array of simplices into a new table. All the simplices must
+	 * have the same number of vertices.
+	 *
+	 * @param simplices
+	 * @return
+	 */
+	public static SimplexTable of(int[][] simplices) {
+		int stride = simplices.length == 0 ? 0 : simplices[0].length;
+		SimplexTable table = new SimplexTable(simplices.length, stride);
+		for (int i = 0; i < simplices.length; i++) {
+			if (simplices[i].length != stride)
+				throw new IllegalArgumentException(
+						"All simplices must have the same number of vertices");
+			System.arraycopy(simplices[i], 0, table.data, i * stride, stride);
+		}
+		return table;
+	}
+
+	/**
+	 * @return the number of simplices in this table
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of vertices of each simplex (i.e., the row stride)
+	 */
+	public int stride() {
+		return stride;
+	}
+
+	/**
+	 * @return the dimension of the simplices in this table
+	 */
+	public int dimension() {
+		return stride - 1;
+	}
+
+	/**
+	 * The backing array. Row i starts at <code>offset(i)</code>.
+	 *
+	 * @return
+	 */
+	public int[] data() {
+		return data;
+	}
+
+	/**
+	 * @return false if this table has no backing array (see
+	 *         {@link MappedSimplexTable})
+	 */
+	public boolean hasArray() {
+		return data != null;
+	}
+
+	/**
+	 * @return this table if it has a backing array, a copy of it in the heap
+	 *         otherwise
+	 */
+	public SimplexTable withArray() {
+		if (hasArray())
+			return this;
+		SimplexTable table = new SimplexTable(size, stride);
+		for (int i = 0; i < size; i++)
+			copyRow(i, table.data, i * stride);
+		return table;
+	}
+
+	/**
+	 * @param position
+	 * @return the entry at the given position in the table (i.e., the entry
+	 *         at column position % stride() of row position / stride())
+	 */
+	protected int entry(int position) {
+		return data[position];
+	}
+
+	public int offset(int row) {
+		return row * stride;
+	}
+
+	public int get(int row, int column) {
+		return entry(row * stride + column);
+	}
+
+	public void set(int row, int column, int value) {
+		data[row * stride + column] = value;
+	}
+
+	/**
+	 * Copy the vertices of a simplex into dst, which must have room for
+	 * stride() entries
+	 *
+	 * @param row
+	 * @param dst
+	 * @return dst
+	 */
+	public int[] copyRow(int row, int[] dst) {
+		copyRow(row, dst, 0);
+		return dst;
+	}
+
+	/**
+	 * Copy the vertices of a simplex into dst, starting at offset
+	 *
+	 * @param row
+	 * @param dst
+	 * @param offset
+	 */
+	public void copyRow(int row, int[] dst, int offset) {
+		System.arraycopy(data, row * stride, dst, offset, stride);
+	}
+
+	/**
+	 * @param row
+	 * @return a newly allocated copy of the vertices of a simplex
+	 */
+	public int[] row(int row) {
+		return copyRow(row, new int[stride]);
+	}
+
+	/**
+	 * Lexicographical comparison of two rows of this table
+	 *
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public int compareRows(int i, int j) {
+		int a = i * stride;
+		int b = j * stride;
+		for (int c = 0; c < stride; c++, a++, b++) {
+			int x = entry(a);
+			int y = entry(b);
+			if (x < y)
+				return -1;
+			else if (x > y)
+				return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Lexicographical comparison of a row of this table and the stride()
+	 * entries of key starting at offset
+	 *
+	 * @param row
+	 * @param key
+	 * @param offset
+	 * @return
+	 */
+	public int compareRow(int row, int[] key, int offset) {
+		int a = row * stride;
+		for (int c = 0; c < stride; c++, a++) {
+			int x = entry(a);
+			if (x < key[offset + c])
+				return -1;
+			else if (x > key[offset + c])
+				return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Search for a simplex in this table, whose rows must be stored in
+	 * lexicographical order.
+	 *
+	 * @param key
+	 * @param offset
+	 * @return the index of the row, if found; otherwise,
+	 *         <code>-(insertion point) - 1</code> as in
+	 *         {@link Arrays#binarySearch(int[], int)}
+	 */
+	public int binarySearch(int[] key, int offset) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = compareRow(mid, key, offset);
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Search for a simplex, given its vertices in any order, in this table,
+	 * whose rows must be sorted (both within each row and lexicographically).
+	 * No allocation is performed: the key is traversed in increasing order by
+	 * repeated minimum searches, which is cheap for the small number of
+	 * vertices of a simplex.
+	 *
+	 * @param vertices
+	 * @param offset
+	 *            the position of the first of the stride() vertices in the key
+	 * @return the index of the row, or -1 if not found
+	 */
+	public int indexOf(int[] vertices, int offset) {
+		int low = 0;
+		int high = size - 1;
+		int end = offset + stride;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = 0;
+			long previous = Long.MIN_VALUE;
+			for (int c = 0, a = mid * stride; c < stride && cmp == 0; c++, a++) {
+				// the c-th smallest vertex is the smallest one greater than the
+				// (c-1)-th
+				long next = Long.MAX_VALUE;
+				for (int i = offset; i < end; i++)
+					if (vertices[i] > previous && vertices[i] < next)
+						next = vertices[i];
+				int x = entry(a);
+				if (x < next)
+					cmp = -1;
+				else if (x > next)
+					cmp = 1;
+				previous = next;
+			}
+			if (cmp < 0)
+				low = mid + 1;
+			else if (cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Builds a new table with the rows of this table taken in the given order
+	 *
+	 * @param order
+	 *            the indices of the rows of this table, in the order in which
+	 *            they will appear in the new table
+	 * @return
+	 */
+	public SimplexTable select(int[] order) {
+		SimplexTable table = new SimplexTable(order.length, stride);
+		for (int i = 0; i < order.length; i++)
+			copyRow(order[i], table.data, i * stride);
+		return table;
+	}
+
+	public int[][] toArray() {
+		int[][] array = new int[size][];
+		for (int i = 0; i < size; i++)
+			array[i] = row(i);
+		return array;
+	}
+
+	@Override
+	public String toString() {
+		return "SimplexTable(" + size + "x" + stride + ")";
+	}
+
+}
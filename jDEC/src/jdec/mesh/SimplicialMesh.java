@@ -1,19 +1,15 @@
 package jdec.mesh;
 
-import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
-import it.unimi.dsi.fastutil.ints.IntSet;
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.fastutil.objects.Object2IntMap.Entry;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import jdec.math.Combinatorial;
+import jdec.math.Parity;
 import jdec.math.Volume;
 
 public class SimplicialMesh {
@@ -24,10 +20,12 @@ public class SimplicialMesh {
 	private final int manifoldDimension;
 	private final int embeddingDimension;
 
-	private Object2IntMap<Simplex> simplexToIndex;
-	private Set<Simplex> faces;
-	private Object2ObjectMap<Simplex, IntSet> faceToSimplex;
-	private IntSet[] simplexNeigbors;
+	// incidence relations in CSR form, built on first use
+	private SimplexTable faces;
+	private Incidence elementToFaces;
+	private Incidence faceToElements;
+	private Incidence elementToElements;
+	private Incidence vertexToElements;
 
 	private Set<Simplex> boundary;
 
@@ -53,40 +51,62 @@ public class SimplicialMesh {
 					max = index;
 			}
 		}
-		if (min < 0 || max > vertices.length)
+		if (min < 0 || max >= vertices.length)
 			throw new IllegalArgumentException("Invalid index in elements");
+	}
 
-		simplexToIndex = new Object2IntOpenHashMap<Simplex>();
-		for (int i = 0; i < this.elements.length; i++)
-			simplexToIndex.put(new Simplex(elements[i]), i);
-
-		this.faces = skeleton(manifoldDimension() - 1);
-
-		faceToSimplex = new Object2ObjectOpenHashMap<Simplex, IntSet>();
-		for (Simplex face : faces)
-			faceToSimplex.put(face, new IntOpenHashSet());
-		for (Entry<Simplex> simplexAndIndex : simplexToIndex
-				.object2IntEntrySet()) {
-			for (Simplex b : simplexAndIndex.getKey().boundary())
-				faceToSimplex.get(b).add(simplexAndIndex.getIntValue());
+	/**
+	 * Build the faces and the incidence between faces and elements. The faces
+	 * of all the elements are sorted (with a radix sort, i.e., counting-sort
+	 * passes, for large meshes) so that equal faces become adjacent.
+	 */
+	private synchronized void buildFaces() {
+		if (faces != null)
+			return;
+		int nElements = elements.length;
+		int stride = manifoldDimension;
+		// a 0-dimensional mesh has no faces
+		int facesPerElement = manifoldDimension == 0 ? 0
+				: manifoldDimension + 1;
+		int nOccurrences = nElements * facesPerElement;
 
+		// the i-th face of an element omits its i-th smallest vertex
+		SimplexTable occurrences = new SimplexTable(nOccurrences, stride);
+		int[] data = occurrences.data();
+		int[] sorted = new int[manifoldDimension + 1];
+		for (int e = 0, q = 0; e < nElements; e++) {
+			System.arraycopy(elements[e], 0, sorted, 0, sorted.length);
+			Arrays.sort(sorted);
+			for (int i = 0; i < facesPerElement; i++)
+				for (int c = 0; c < sorted.length; c++)
+					if (c != i)
+						data[q++] = sorted[c];
 		}
-		simplexNeigbors = new IntSet[elements.length];
-		for (Entry<Simplex> simplexAndIndex : simplexToIndex
-				.object2IntEntrySet()) {
-			for (Simplex b : simplexAndIndex.getKey().boundary()) {
-				IntSet indices;
-				int simplexIndex = simplexAndIndex.getIntValue();
-				if ((indices = simplexNeigbors[simplexIndex]) == null) {
-					indices = new IntOpenHashSet();
-					simplexNeigbors[simplexIndex] = indices;
-				}
-				for (int index : faceToSimplex.get(b))
-					if (index != simplexIndex)
-						indices.add(index);
+		int[] order = SimplexSort.sortedOrder(occurrences);
 
-			}
+		// number the distinct faces in sorted order; since the sort is
+		// stable, the elements of each face are in increasing order
+		int[] faceOfOccurrence = new int[nOccurrences];
+		int[] faceOffsets = new int[nOccurrences + 1];
+		int[] faceElements = new int[nOccurrences];
+		int nFaces = 0;
+		for (int k = 0; k < nOccurrences; k++) {
+			int o = order[k];
+			// the first occurrence of each face is kept in order[0, nFaces)
+			if (nFaces == 0 || occurrences.compareRows(order[nFaces - 1], o) != 0)
+				order[nFaces++] = o;
+			faceOfOccurrence[o] = nFaces - 1;
+			faceElements[k] = o / facesPerElement;
+			faceOffsets[nFaces] = k + 1;
 		}
+		int[] elementOffsets = new int[nElements + 1];
+		for (int e = 0; e <= nElements; e++)
+			elementOffsets[e] = e * facesPerElement;
+
+		elementToFaces = new Incidence(elementOffsets, faceOfOccurrence);
+		faceToElements = new Incidence(Arrays.copyOf(faceOffsets, nFaces + 1),
+				faceElements);
+		faces = occurrences.select(Arrays.copyOf(order, nFaces));
 	}
 
 	public SimplicialMesh(double[][] points, Collection<Simplex> simplices) {
@@ -113,6 +133,135 @@ public class SimplicialMesh {
 		return elements;
 	}
 
+	/**
+	 * Renumber the vertices and elements of this mesh to improve the
+	 * locality of the data attached to them (and to the simplices of a
+	 * complex built from the renumbered mesh)
+	 * 
+	 * @param ordering
+	 * @return the renumbered mesh and the permutations of its vertices and
+	 *         elements
+	 */
+	public Renumbering renumber(Renumbering.Ordering ordering) {
+		return new Renumbering(this, ordering);
+	}
+
+	/**
+	 * @return the (manifoldDimension - 1)-faces of the elements, sorted and
+	 *         with sorted vertices
+	 */
+	public SimplexTable faces() {
+		buildFaces();
+		return faces;
+	}
+
+	/**
+	 * The faces of each element: the i-th face of an element, whose index in
+	 * {@link #faces()} is given by this incidence, is the one that omits its
+	 * i-th smallest vertex.
+	 * 
+	 * @return
+	 */
+	public Incidence elementToFaces() {
+		buildFaces();
+		return elementToFaces;
+	}
+
+	/**
+	 * @return the elements containing each face of {@link #faces()}, in
+	 *         increasing order
+	 */
+	public Incidence faceToElements() {
+		buildFaces();
+		return faceToElements;
+	}
+
+	/**
+	 * @return the elements sharing a face with each element, in increasing
+	 *         order
+	 */
+	public synchronized Incidence elementToElements() {
+		if (elementToElements == null) {
+			Incidence elementFaces = elementToFaces();
+			Incidence faceElements = faceToElements();
+			int nElements = elements.length;
+			int[] offsets = new int[nElements + 1];
+			for (int e = 0; e < nElements; e++) {
+				int degree = 0;
+				for (int k = elementFaces.start(e); k < elementFaces.end(e); k++)
+					degree += faceElements.degree(elementFaces.targets()[k]) - 1;
+				offsets[e + 1] = offsets[e] + degree;
+			}
+			int[] neighbors = new int[offsets[nElements]];
+			int q = 0;
+			for (int e = 0; e < nElements; e++) {
+				int from = q;
+				for (int k = elementFaces.start(e); k < elementFaces.end(e); k++) {
+					int f = elementFaces.targets()[k];
+					for (int j = faceElements.start(f); j < faceElements.end(f); j++) {
+						int other = faceElements.targets()[j];
+						if (other == e)
+							continue;
+						// insert in increasing order, skipping duplicates
+						int i = q;
+						while (i > from && neighbors[i - 1] > other)
+							i--;
+						if (i > from && neighbors[i - 1] == other)
+							continue;
+						System.arraycopy(neighbors, i, neighbors, i + 1, q - i);
+						neighbors[i] = other;
+						q++;
+					}
+				}
+				offsets[e] = from;
+			}
+			offsets[nElements] = q;
+			elementToElements = new Incidence(offsets, Arrays.copyOf(
+					neighbors, q));
+		}
+		return elementToElements;
+	}
+
+	/**
+	 * @return the elements containing each vertex, in increasing order
+	 */
+	public synchronized Incidence vertexToElements() {
+		if (vertexToElements == null) {
+			int[] offsets = new int[vertices.length + 1];
+			for (int[] element : elements)
+				for (int v : element)
+					offsets[v + 1]++;
+			for (int v = 0; v < vertices.length; v++)
+				offsets[v + 1] += offsets[v];
+			int[] next = Arrays.copyOf(offsets, vertices.length);
+			int[] incident = new int[offsets[vertices.length]];
+			for (int e = 0; e < elements.length; e++)
+				for (int v : elements[e])
+					incident[next[v]++] = e;
+			vertexToElements = new Incidence(offsets, incident);
+		}
+		return vertexToElements;
+	}
+
+	/**
+	 * Label the elements by connected component, two elements being connected
+	 * if they share a face
+	 * 
+	 * @param executor
+	 *            the executor, or null to label in the calling thread
+	 * @return
+	 */
+	public Components components(ExecutorService executor) {
+		return Components.of(faceToElements(), elements.length, executor);
+	}
+
+	/**
+	 * @see #components(ExecutorService)
+	 */
+	public Components components() {
+		return components(null);
+	}
+
 	@Override
 	public String toString() {
 		return "SimplicialMesh< " + this.manifoldDimension() + "D manifold, "
@@ -138,14 +287,18 @@ public class SimplicialMesh {
 	public Set<Simplex> boundary() {
 		if (boundary == null) {
 			boundary = new ObjectOpenHashSet<Simplex>();
-
-			for (int[] element : elements) {
-				Simplex s = new Simplex(element);
-				for (Simplex b : s.boundary())
-					if (boundary.contains(b)) // it occurs twice -- remove it
-						boundary.remove(b);
-					else
-						boundary.add(b); // first occurrence
+			Incidence elementFaces = elementToFaces();
+			Incidence faceElements = faceToElements();
+			int[] face = new int[manifoldDimension];
+			for (int e = 0; e < elements.length; e++) {
+				int parity = Parity.parityWRToSorted(elements[e]);
+				for (int i = 0; i < elementFaces.degree(e); i++) {
+					int f = elementFaces.get(e, i);
+					if (faceElements.degree(f) == 1)
+						// oriented as in the boundary of the element
+						boundary.add(new Simplex(faces.copyRow(f, face),
+								(parity + i) % 2));
+				}
 			}
 		}
 		return boundary;
@@ -169,7 +322,8 @@ public class SimplicialMesh {
 	/**
 	 * Assure consistent orientation of the mesh. If the dimension of the
 	 * manifold and that of the embedding space are the same, then the manifold
-	 * will be oriented coherently with the embedding space. An
+	 * will be oriented coherently with the embedding space; otherwise, the
+	 * orientation is propagated with {@link #orientComponents()}. An
 	 * ArithmeticException is thrown if the manifold iss not orientable.
 	 */
 	public void orient() {
@@ -186,7 +340,93 @@ public class SimplicialMesh {
 				}
 
 			}
+			boundary = null;
+		} else if (orientComponents().length > 0)
+			throw new ArithmeticException("The manifold is not orientable");
+	}
 
+	/**
+	 * Orient the elements of each connected component consistently, using
+	 * only the combinatorial structure of the mesh: no coordinates are needed.
+	 * Starting from the element of smallest index of each component, the
+	 * orientation is propagated breadth-first to the elements sharing a face,
+	 * which must induce opposite orientations on it. Faces shared by more than
+	 * two elements are not manifold and do not propagate the orientation, so
+	 * that components are the classes of elements connected through manifold
+	 * faces. The running time is linear in the number of elements (once the
+	 * faces are built).
+	 * 
+	 * Elements are flipped in place by swapping their first two vertices. The
+	 * orientation of the first element of each component is kept; the elements
+	 * of a non-orientable component are left in the orientation reached by the
+	 * traversal.
+	 * 
+	 * @return the first (smallest) element of each non-orientable component,
+	 *         in increasing order; an empty array if all the components are
+	 *         orientable
+	 */
+	public int[] orientComponents() {
+		if (manifoldDimension == 0)
+			return new int[0];
+		Incidence elementFaces = elementToFaces();
+		Incidence faceElements = faceToElements();
+		int nElements = elements.length;
+		// parity of each element with respect to its sorted vertices, updated
+		// as the elements are flipped
+		int[] parity = new int[nElements];
+		for (int e = 0; e < nElements; e++)
+			parity[e] = Parity.parityWRToSorted(elements[e]);
+		boolean[] visited = new boolean[nElements];
+		int[] queue = new int[nElements];
+		IntArrayList nonOrientable = new IntArrayList();
+		int size = 0;
+		for (int seed = 0; seed < nElements; seed++) {
+			if (visited[seed])
+				continue;
+			boolean orientable = true;
+			visited[seed] = true;
+			queue[size++] = seed;
+			for (int head = size - 1; head < size; head++) {
+				int e = queue[head];
+				for (int i = 0; i < elementFaces.degree(e); i++) {
+					int f = elementFaces.get(e, i);
+					if (faceElements.degree(f) != 2)
+						continue;
+					int g = faceElements.get(f, 0);
+					if (g == e)
+						g = faceElements.get(f, 1);
+					int j = 0;
+					while (elementFaces.get(g, j) != f)
+						j++;
+					// the induced orientations of the face, (parity + position)
+					// % 2, must differ
+					boolean consistent = ((parity[e] + i + parity[g] + j) & 1) == 1;
+					if (!visited[g]) {
+						visited[g] = true;
+						if (!consistent)
+							parity[g] ^= 1;
+						queue[size++] = g;
+					} else if (!consistent)
+						orientable = false;
+				}
+			}
+			if (!orientable)
+				nonOrientable.add(seed);
+		}
+		boolean flipped = false;
+		for (int e = 0; e < nElements; e++) {
+			int[] element = elements[e];
+			if (Parity.parityWRToSorted(element) != parity[e]) {
+				int t = element[0];
+				element[0] = element[1];
+				element[1] = t;
+				flipped = true;
+			}
 		}
+		// the faces and their incidence only depend on the sorted vertices,
+		// only the oriented boundary must be rebuilt
+		if (flipped)
+			boundary = null;
+		return nonOrientable.toIntArray();
 	}
 }
@@ -0,0 +1,180 @@
+package jdec.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Sequential binary I/O of primitive arrays over a FileChannel. Arrays are
+ * written through a reusable buffer and read back by mapping the file, in
+ * regions of at most MAX_REGION bytes so that arrays larger than 2GB can be
+ * read as well. All values are stored in big-endian order.
+ *
+ */
+public class ChannelIO {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int MAX_REGION = 1 << 30;
+
+	private ChannelIO() {
+	}
+
+	public static class Writer {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer
+				.allocateDirect(BUFFER_SIZE);
+
+		public Writer(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		public void writeInt(int value) throws IOException {
+			ensureRemaining(4);
+			buffer.putInt(value);
+		}
+
+		public void writeInts(int[] values, int offset, int length)
+				throws IOException {
+			int end = offset + length;
+			while (offset < end) {
+				ensureRemaining(4);
+				int n = Math.min(end - offset, buffer.remaining() / 4);
+				buffer.asIntBuffer().put(values, offset, n);
+				buffer.position(buffer.position() + 4 * n);
+				offset += n;
+			}
+		}
+
+		public void writeDoubles(double[] values, int offset, int length)
+				throws IOException {
+			int end = offset + length;
+			while (offset < end) {
+				ensureRemaining(8);
+				int n = Math.min(end - offset, buffer.remaining() / 8);
+				buffer.asDoubleBuffer().put(values, offset, n);
+				buffer.position(buffer.position() + 8 * n);
+				offset += n;
+			}
+		}
+
+		/**
+		 * @return the position in the file of the next value written
+		 */
+		public long position() throws IOException {
+			return channel.position() + buffer.position();
+		}
+
+		/**
+		 * Write the buffered values to the channel
+		 */
+		public void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		private void ensureRemaining(int bytes) throws IOException {
+			if (buffer.remaining() < bytes)
+				flush();
+		}
+	}
+
+	public static class Reader {
+		private final FileChannel channel;
+		private long position;
+
+		public Reader(FileChannel channel, long position) {
+			this.channel = channel;
+			this.position = position;
+		}
+
+		public long position() {
+			return position;
+		}
+
+		/**
+		 * Skip a number of bytes
+		 */
+		public void skip(long bytes) {
+			position += bytes;
+		}
+
+		public int readInt() throws IOException {
+			return map(4).getInt();
+		}
+
+		public int[] readInts(int length) throws IOException {
+			int[] values = new int[length];
+			int offset = 0;
+			while (offset < length) {
+				int n = Math.min(length - offset, MAX_REGION / 4);
+				map(4L * n).asIntBuffer().get(values, offset, n);
+				offset += n;
+			}
+			return values;
+		}
+
+		public double[] readDoubles(int length) throws IOException {
+			double[] values = new double[length];
+			int offset = 0;
+			while (offset < length) {
+				int n = Math.min(length - offset, MAX_REGION / 8);
+				map(8L * n).asDoubleBuffer().get(values, offset, n);
+				offset += n;
+			}
+			return values;
+		}
+
+		/**
+		 * Map the next ints of the file, without copying them in the heap
+		 */
+		public MappedIntArray mapInts(int length) throws IOException {
+			int nChunks = (int) ((length + (long) MappedIntArray.CHUNK_SIZE - 1)
+					/ MappedIntArray.CHUNK_SIZE);
+			IntBuffer[] chunks = new IntBuffer[nChunks];
+			for (int c = 0; c < nChunks; c++) {
+				int n = Math.min(length - c * MappedIntArray.CHUNK_SIZE,
+						MappedIntArray.CHUNK_SIZE);
+				chunks[c] = map(4L * n).asIntBuffer();
+			}
+			return new MappedIntArray(chunks, length);
+		}
+
+		/**
+		 * Map the next doubles of the file, without copying them in the heap
+		 */
+		public MappedDoubleArray mapDoubles(int length) throws IOException {
+			int nChunks = (int) ((length + (long) MappedDoubleArray.CHUNK_SIZE - 1)
+					/ MappedDoubleArray.CHUNK_SIZE);
+			DoubleBuffer[] chunks = new DoubleBuffer[nChunks];
+			for (int c = 0; c < nChunks; c++) {
+				int n = Math.min(length - c * MappedDoubleArray.CHUNK_SIZE,
+						MappedDoubleArray.CHUNK_SIZE);
+				chunks[c] = map(8L * n).asDoubleBuffer();
+			}
+			return new MappedDoubleArray(chunks, length);
+		}
+
+		/**
+		 * Map the next bytes of the file and advance the position
+		 *
+		 * @param bytes
+		 *            at most MAX_REGION bytes
+		 * @return a read-only buffer over the mapped region
+		 */
+		public MappedByteBuffer map(long bytes) throws IOException {
+			if (position + bytes > channel.size())
+				throw new EOFException("Unexpected end of file");
+			MappedByteBuffer region = channel.map(MapMode.READ_ONLY,
+					position, bytes);
+			position += bytes;
+			return region;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package jdec.util;
+
+import java.nio.IntBuffer;
+
+/**
+ * A read-only int array backed by memory-mapped regions of a file. The array
+ * is split in chunks of CHUNK_SIZE entries, each one mapped separately, so
+ * that its size in bytes is not limited to 2GB.
+ *
+ */
+public class MappedIntArray {
+
+	static final int CHUNK_SHIFT = 28;
+	static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final IntBuffer[] chunks;
+	private final int length;
+
+	MappedIntArray(IntBuffer[] chunks, int length) {
+		this.chunks = chunks;
+		this.length = length;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public int get(int i) {
+		return chunks[i >>> CHUNK_SHIFT].get(i & CHUNK_MASK);
+	}
+
+	/**
+	 * Copy the entries [from, from + count) into dst, starting at offset
+	 */
+	public void get(int from, int[] dst, int offset, int count) {
+		while (count > 0) {
+			int chunk = from >>> CHUNK_SHIFT;
+			int position = from & CHUNK_MASK;
+			int n = Math.min(count, CHUNK_SIZE - position);
+			IntBuffer view = chunks[chunk].duplicate();
+			view.position(position);
+			view.get(dst, offset, n);
+			from += n;
+			offset += n;
+			count -= n;
+		}
+	}
+}
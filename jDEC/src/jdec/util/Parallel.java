@@ -0,0 +1,123 @@
+package jdec.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Helpers to split loops over independent indices into chunks run by an
+ * executor. A null executor runs every chunk in the calling thread, in order.
+ *
+ */
+public class Parallel {
+
+	/**
+	 * The body of a loop over the index range [from, to)
+	 */
+	public interface Range {
+		void run(int chunk, int from, int to);
+	}
+
+	private Parallel() {
+	}
+
+	/**
+	 * @param executor
+	 * @return the number of chunks used by default to split work among the
+	 *         threads of the executor
+	 */
+	public static int chunks(ExecutorService executor) {
+		if (executor == null)
+			return 1;
+		return 4 * Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @param n
+	 * @param chunks
+	 * @param chunk
+	 * @return the first index of a chunk when [0, n) is split in the given
+	 *         number of chunks of (almost) equal size
+	 */
+	public static int chunkStart(int n, int chunks, int chunk) {
+		return (int) ((long) n * chunk / chunks);
+	}
+
+	/**
+	 * Run body over [0, n) split in the given number of chunks and wait for
+	 * all of them to complete
+	 *
+	 * @param executor
+	 *            the executor running the chunks, or null to run them in the
+	 *            calling thread
+	 * @param n
+	 * @param chunks
+	 * @param body
+	 */
+	public static void forRange(ExecutorService executor, int n, int chunks,
+			final Range body) {
+		if (chunks < 1)
+			chunks = 1;
+		if (executor == null || chunks == 1) {
+			for (int c = 0; c < chunks; c++)
+				body.run(c, chunkStart(n, chunks, c),
+						chunkStart(n, chunks, c + 1));
+			return;
+		}
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(chunks);
+		for (int c = 0; c < chunks; c++) {
+			final int chunk = c;
+			final int from = chunkStart(n, chunks, c);
+			final int to = chunkStart(n, chunks, c + 1);
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					body.run(chunk, from, to);
+					return null;
+				}
+			});
+		}
+		invokeAll(executor, tasks);
+	}
+
+	/**
+	 * Run a list of tasks and wait for all of them to complete, rethrowing the
+	 * first failure
+	 *
+	 * @param executor
+	 *            the executor running the tasks, or null to run them in the
+	 *            calling thread
+	 * @param tasks
+	 * @return the results of the tasks, in order
+	 */
+	public static <T> List<T> invokeAll(ExecutorService executor,
+			List<? extends Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			if (executor == null) {
+				for (Callable<T> task : tasks)
+					results.add(task.call());
+			} else {
+				for (Future<T> future : executor.invokeAll(tasks))
+					results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException(cause);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		return results;
+	}
+}